@@ -0,0 +1,398 @@
+package atm;
+
+import java.awt.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import javax.swing.*;
+
+public class ATMInterfaceGUI extends JFrame {
+    private static final long MINIMUM_BALANCE_CENTS = 100_00L;
+
+    // all account and DB work goes through the service; the GUI only renders results
+    private final AtmService service;
+
+    private CardLayout cardLayout;
+    private JPanel mainPanel;
+
+    // Login components
+    private JTextField cardNumberField;
+    private JPasswordField pinField;
+    private JLabel loginMessageLabel;
+
+    // Welcome screen
+    private JLabel welcomeLabel;
+
+    // Main menu components
+    private JLabel balanceLabel;
+    private JLabel dateTimeLabel;
+    private Account currentUser;
+
+    public ATMInterfaceGUI(AtmService service) {
+        this.service = service;
+        setTitle("Anywhere ATM");
+        // Increase default UI font sizes more so the app scales better on fullscreen
+        increaseGlobalFont(1.5f);
+        // Start maximized so the larger fonts fill the screen
+        setExtendedState(JFrame.MAXIMIZED_BOTH);
+        setSize(800, 600);
+        setLocationRelativeTo(null);
+        setDefaultCloseOperation(EXIT_ON_CLOSE);
+
+        cardLayout = new CardLayout();
+        mainPanel = new JPanel(cardLayout);
+
+        mainPanel.add(createLoginPanel(), "login");
+        mainPanel.add(createWelcomePanel(), "welcome");
+        mainPanel.add(createMenuPanel(), "menu");
+
+        add(mainPanel);
+        cardLayout.show(mainPanel, "login");
+    }
+
+    private JPanel createLoginPanel() {
+        JPanel panel = new JPanel(new GridBagLayout());
+        panel.setBackground(new Color(30, 144, 255)); // Dodger Blue
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.insets = new Insets(8, 8, 8, 8);
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        JLabel titleLabel = new JLabel("Anywhere ATM", SwingConstants.CENTER);
+        titleLabel.setForeground(Color.WHITE);
+        titleLabel.setFont(new Font("Segoe UI", Font.BOLD, 28));
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.gridwidth = 2;
+        panel.add(titleLabel, gbc);
+
+        // skip subtitle to keep a clean login screen
+        gbc.gridwidth = 1;
+        gbc.gridy++;
+
+        panel.add(new JLabel("Card Number:"), gbc);
+        cardNumberField = new JTextField(15);
+        gbc.gridx = 1;
+        panel.add(cardNumberField, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy++;
+        panel.add(new JLabel("PIN:"), gbc);
+        pinField = new JPasswordField(15);
+        gbc.gridx = 1;
+        panel.add(pinField, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy++;
+        gbc.gridwidth = 2;
+        loginMessageLabel = new JLabel(" ", SwingConstants.CENTER);
+        loginMessageLabel.setForeground(Color.RED);
+        panel.add(loginMessageLabel, gbc);
+
+        gbc.gridy++;
+        JPanel buttonWrap = new JPanel();
+        buttonWrap.setOpaque(false);
+        JButton loginButton = new JButton("Login");
+        buttonWrap.add(loginButton);
+        gbc.gridx = 0;
+        gbc.gridwidth = 2;
+        panel.add(buttonWrap, gbc);
+
+        loginButton.addActionListener(e -> { e.hashCode(); authenticateUser(); });
+
+        return panel;
+    }
+
+    private JPanel createWelcomePanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createEmptyBorder(50, 50, 50, 50));
+
+        welcomeLabel = new JLabel("Welcome!", SwingConstants.CENTER);
+        welcomeLabel.setFont(new Font("Segoe UI", Font.BOLD, 18));
+        panel.add(welcomeLabel, BorderLayout.CENTER);
+
+        JButton continueBtn = new JButton("Continue");
+        panel.add(continueBtn, BorderLayout.SOUTH);
+
+        continueBtn.addActionListener(e -> { e.hashCode(); updateDateTimeLabel(); refreshBalance(); cardLayout.show(mainPanel, "menu"); });
+
+        return panel;
+    }
+
+    private JPanel createMenuPanel() {
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+
+        JLabel menuLabel = new JLabel("ATM Main Menu", SwingConstants.CENTER);
+        menuLabel.setFont(new Font("Segoe UI", Font.BOLD, 20));
+
+        dateTimeLabel = new JLabel("", SwingConstants.CENTER);
+        dateTimeLabel.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+
+        JPanel northPanel = new JPanel(new GridLayout(2, 1));
+        northPanel.add(menuLabel);
+        northPanel.add(dateTimeLabel);
+
+        panel.add(northPanel, BorderLayout.NORTH);
+
+        // Use 3 rows x 2 columns for a compact, readable layout
+        JPanel buttonPanel = new JPanel(new GridLayout(3, 2, 10, 10));
+
+        JButton transferBtn = new JButton("Transfer Funds");
+        JButton checkBalanceBtn = new JButton("Check Balance");
+        JButton accountDetailsBtn = new JButton("Account Details");
+        JButton changePinBtn = new JButton("Change PIN");
+        JButton transactionHistoryBtn = new JButton("Transaction History");
+        JButton logoutBtn = new JButton("Logout");
+
+        buttonPanel.add(transferBtn);
+        buttonPanel.add(checkBalanceBtn);
+        buttonPanel.add(accountDetailsBtn);
+        buttonPanel.add(changePinBtn);
+        buttonPanel.add(transactionHistoryBtn);
+        buttonPanel.add(logoutBtn);
+
+        panel.add(buttonPanel, BorderLayout.CENTER);
+
+        balanceLabel = new JLabel("Balance: $0.00", SwingConstants.CENTER);
+        balanceLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
+        // balance label intentionally not added to UI (removed from main menu per request)
+
+        transferBtn.addActionListener(e -> { e.hashCode(); transferFunds(); });
+        checkBalanceBtn.addActionListener(e -> { e.hashCode(); checkBalance(); });
+        accountDetailsBtn.addActionListener(e -> { e.hashCode(); showAccountDetails(); });
+        changePinBtn.addActionListener(e -> { e.hashCode(); changePin(); });
+        transactionHistoryBtn.addActionListener(e -> { e.hashCode(); showTransactionHistory(); });
+        logoutBtn.addActionListener(e -> { e.hashCode(); logout(); });
+
+        return panel;
+    }
+
+    private void authenticateUser() {
+        String input = cardNumberField.getText().trim();
+        String pin = new String(pinField.getPassword()).trim();
+        // the service prefers login by physical card number (card_no), falling back to account_number
+        onEdt(service.login(input, pin), (account, error) -> {
+            if (account != null) {
+                currentUser = account;
+                loginMessageLabel.setText(" ");
+                cardNumberField.setText("");
+                pinField.setText("");
+                welcomeLabel.setText("Welcome, " + currentUser.name);
+                cardLayout.show(mainPanel, "welcome");
+            } else {
+                loginMessageLabel.setText(error == null ? "Invalid card number or PIN."
+                        : isLockedOut(error) ? PinVerifier.LockedOutException.MESSAGE : "Login unavailable, please try again.");
+            }
+        });
+    }
+
+    private void refreshBalance() {
+        onEdt(service.balance(currentUser.accountNumber), (balance, error) -> {
+            if (error == null) updateBalanceLabel(balance);
+        });
+    }
+
+    private void updateBalanceLabel(long balance) {
+        balanceLabel.setText("Balance: $" + Money.format(balance));
+        if (balance < MINIMUM_BALANCE_CENTS) {
+            JOptionPane.showMessageDialog(this,
+                    "⚠️ Warning: Your balance is below the minimum required $" + Money.format(MINIMUM_BALANCE_CENTS),
+                    "Low Balance Warning", JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
+    private void updateDateTimeLabel() {
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+        LocalDateTime now = LocalDateTime.now();
+        dateTimeLabel.setText("Current Date & Time: " + dtf.format(now));
+    }
+
+    private void transferFunds() {
+        String recipientAccount = JOptionPane.showInputDialog(this, "Enter the account number:");
+        if (recipientAccount == null) return;
+        String input = JOptionPane.showInputDialog(this, "Enter transfer amount:");
+        if (input == null) return;
+        long amount;
+        try {
+            amount = Money.parseCents(input);
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "Please enter a valid number.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        onEdt(service.transfer(currentUser.accountNumber, recipientAccount.trim(), amount), (result, error) -> {
+            if (error != null) {
+                // RemoteAtmService reports a lost reply as OUTCOME_UNKNOWN; a failure here may still have happened mid-transfer
+                showError("Transfer could not be completed. Check your balance and history before trying again.");
+            } else if (result.status == AtmService.TransferStatus.COMPLETED) {
+                JOptionPane.showMessageDialog(this, "Transferred $" + Money.format(amount) + " to " + recipientAccount.trim() + "\nReceipt: " + result.receipt);
+                updateBalanceLabel(result.balanceCents);
+            } else {
+                showError(result.message);
+            }
+        });
+    }
+
+    private void showTransactionHistory() {
+        if (currentUser == null) {
+            JOptionPane.showMessageDialog(this, "No user is currently logged in.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        // pages are fetched lazily as the user scrolls; the dialog opens immediately
+        JLabel statusLabel = new JLabel(" ");
+        TransactionHistoryModel model = new TransactionHistoryModel(service, currentUser.accountNumber, statusLabel::setText);
+        JTable table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        JScrollPane sp = new JScrollPane(table);
+        sp.setPreferredSize(new Dimension(700, 300));
+        sp.getVerticalScrollBar().addAdjustmentListener(e -> model.onScroll(sp.getVerticalScrollBar(), table.getRowHeight()));
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+        panel.add(new JLabel("Recent DB transactions:"), BorderLayout.NORTH);
+        panel.add(sp, BorderLayout.CENTER);
+        panel.add(statusLabel, BorderLayout.SOUTH);
+        model.loadMore();
+        JOptionPane.showMessageDialog(this, panel, "Transaction History", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private void checkBalance() {
+        onEdt(service.balance(currentUser.accountNumber), (balance, error) -> {
+            if (error != null) {
+                showError("Balance is currently unavailable.");
+                return;
+            }
+            JOptionPane.showMessageDialog(this, "Your current balance is $" + Money.format(balance));
+            updateBalanceLabel(balance);
+        });
+    }
+
+    private void showAccountDetails() {
+        if (currentUser == null) {
+            JOptionPane.showMessageDialog(this, "No user logged in.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        // Require PIN entry before showing sensitive account details (masked)
+        String inputPin = promptForMaskedPin("Enter your PIN to view account details:");
+        if (inputPin == null) return; // user cancelled
+        Account user = currentUser;
+        onEdt(service.verifyPin(user.accountNumber, inputPin.trim())
+                .thenCombine(service.balance(user.accountNumber), (ok, balance) -> ok ? balance : null), (balance, error) -> {
+            if (error != null || balance == null) {
+                JOptionPane.showMessageDialog(this, "Invalid PIN.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append("Name: ").append(user.name).append("\n\n");
+            sb.append("Account Number: ").append(user.accountNumber).append("\n");
+            sb.append("Card No: ").append(user.cardNo).append("\n");
+            sb.append("IFSC Code: ").append(user.ifscCode).append("\n");
+            sb.append("Address: ").append(user.address == null ? "(not provided)" : user.address).append("\n");
+            sb.append("\nBalance: $").append(Money.format(balance));
+            JOptionPane.showMessageDialog(this, sb.toString(), "Account Details", JOptionPane.INFORMATION_MESSAGE);
+        });
+    }
+
+    private void changePin() {
+        // Prompt for the physical card number (card_no in DB)
+        String input = JOptionPane.showInputDialog(this, "Enter your card no. to set/reset PIN:");
+        if (input == null || input.trim().isEmpty()) return;
+        String key = input.trim();
+
+        onEdt(service.findAccount(key), (account, error) -> {
+            if (account == null) {
+                JOptionPane.showMessageDialog(this, "Account not found for that card no.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            String newPin = promptForMaskedPin("Enter new PIN for account " + account.accountNumber + ":");
+            if (newPin == null || newPin.trim().isEmpty()) {
+                JOptionPane.showMessageDialog(this, "PIN cannot be empty.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            int ok = JOptionPane.showConfirmDialog(this,
+                "Are you sure you want to change the PIN for account " + account.accountNumber + "?",
+                "Confirm PIN Change",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.QUESTION_MESSAGE);
+
+            if (ok != JOptionPane.YES_OPTION) return;
+
+            onEdt(service.changePin(account.accountNumber, newPin.trim()), (ignored, changeError) -> {
+                if (changeError != null) {
+                    showError("PIN could not be changed.");
+                } else {
+                    JOptionPane.showMessageDialog(this, "PIN updated successfully for account " + account.accountNumber + ".");
+                }
+            });
+        });
+    }
+
+    // Prompt the user for a PIN using a masked JPasswordField. Returns the entered PIN string or null if cancelled.
+    private String promptForMaskedPin(String message) {
+        JPasswordField pwd = new JPasswordField(10);
+        pwd.setEchoChar('\u2022'); // bullet dot
+        Object[] obj = {message, pwd};
+        int result = JOptionPane.showConfirmDialog(this, obj, "PIN Entry", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (result == JOptionPane.OK_OPTION) {
+            return new String(pwd.getPassword());
+        }
+        return null;
+    }
+
+    // Render a service result on the Event Dispatch Thread once it is available.
+    private <T> void onEdt(CompletableFuture<T> future, BiConsumer<T, Throwable> handler) {
+        future.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> handler.accept(result, error)));
+    }
+
+    private static boolean isLockedOut(Throwable error) {
+        Throwable cause = error.getCause() != null ? error.getCause() : error;
+        return PinVerifier.LockedOutException.MESSAGE.equals(cause.getMessage());
+    }
+
+    private void showError(String message) {
+        JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    private void logout() {
+        // Clear current user and reset UI fields, then show login screen
+        currentUser = null;
+        balanceLabel.setText("Balance: $0.00");
+        dateTimeLabel.setText("");
+        welcomeLabel.setText("Welcome!");
+        loginMessageLabel.setText(" ");
+        cardLayout.show(mainPanel, "login");
+    }
+
+    public static void main(String[] args) {
+        System.out.println("ATM starting...");
+        // With atm.switch.address (host:port) set, act as a thin terminal of an AtmSwitchServer;
+        // otherwise load accounts from DB in the background (falls back to in-memory defaults on error)
+        String switchAddress = System.getProperty("atm.switch.address");
+        AtmService service = switchAddress != null && !switchAddress.isEmpty()
+                ? RemoteAtmService.forAddress(switchAddress)
+                : new LocalAtmService().start();
+        // EXIT_ON_CLOSE ends in System.exit: flush write-behind, write the snapshot and close the journal on the way out
+        Runtime.getRuntime().addShutdownHook(new Thread(service::shutdown, "atm-shutdown"));
+        SwingUtilities.invokeLater(() -> {
+            ATMInterfaceGUI atm = new ATMInterfaceGUI(service);
+            atm.setVisible(true);
+        });
+    }
+
+    // Helper: scale all UIManager fonts by the given factor
+    private void increaseGlobalFont(float scale) {
+        UIDefaults defaults = UIManager.getLookAndFeelDefaults();
+        Enumeration<Object> keys = defaults.keys();
+        while (keys.hasMoreElements()) {
+            Object key = keys.nextElement();
+            Object value = defaults.get(key);
+            if (value instanceof Font) {
+                Font f = (Font) value;
+                Font larger = f.deriveFont(f.getSize2D() * scale);
+                UIManager.put(key, larger);
+            }
+        }
+    }
+}
+
@@ -0,0 +1,50 @@
+package atm;
+
+class Account {
+    String accountNumber; // corresponds to accounts.account_number (primary key)
+    String cardNo;        // corresponds to accounts.card_no (physcial card identifier)
+    String pin;           // PinHasher hash (or a legacy plaintext PIN until the next login upgrades it)
+    // whole cents; only written while holding the account's ledger lock, volatile so balance reads need no lock
+    volatile long balanceCents;
+    String ifscCode;
+    String address;
+    String name;
+    // last few transfers in and out, formatted only when displayed
+    final RecentTransactions recentTransactions = new RecentTransactions();
+    // true while this copy holds journaled or failed writes the DB has not seen
+    volatile boolean dirty;
+    // true while BalanceWriteBehind holds an unflushed balance delta for it; apart from
+    // dirty so that a flush only clears what it wrote
+    volatile boolean balancePending;
+    // recency/frequency score used by the ledger's cache eviction
+    volatile int cacheScore;
+    // batches in flight that will update this copy once their DB commit returns; never evicted while > 0.
+    // Only changed under the account's ledger lock (see AccountLedger.retain)
+    volatile int retainCount;
+
+    public Account(String accountNumber, String cardNo, String pin, long balanceCents, String name, String ifscCode, String address) {
+        this.accountNumber = accountNumber;
+        this.cardNo = cardNo;
+        this.pin = pin;
+        this.balanceCents = balanceCents;
+        this.name = name;
+        this.ifscCode = ifscCode;
+        this.address = address;
+    }
+
+    // Accounts with changes the DB has not seen are never evicted from the cache.
+    boolean unsaved() {
+        return dirty || balancePending;
+    }
+
+    // Accept either account number or physical card number for authentication.
+    // Hashes the PIN (see PinHasher), so it is slow on purpose; LocalAtmService runs it on PinVerifier's pool.
+    public boolean authenticate(String inputCardOrAccount, String inputPin) {
+        if (!accountNumber.equals(inputCardOrAccount) && !cardNo.equals(inputCardOrAccount)) return false;
+        return PinHasher.matches(pin, inputPin);
+    }
+
+    public void addTransaction(long receiptId, long epochMillis, String counterparty, long cents, byte type) {
+        recentTransactions.add(receiptId, epochMillis, counterparty, cents, type);
+    }
+}
@@ -0,0 +1,367 @@
+package atm;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Thread-safe home of the in-memory accounts. Lookups are lock-free; balance changes
+// take the lock stripe(s) of the accounts involved. Two-account operations always lock
+// the lower stripe first, so transfers can run in parallel without deadlocking and
+// transfers between unrelated accounts rarely contend.
+//
+// With a loader configured the ledger is a bounded read-through cache: misses are
+// loaded from the DB by account or card number, and once more than maxAccounts are
+// resident a CLOCK sweep evicts cold ones (LRU- or LFU-flavoured, see EvictionPolicy).
+// Dirty or retained accounts and accounts whose lock is held are never evicted.
+class AccountLedger {
+    // Loads a single account from the backing store; returns null when it does not exist.
+    interface AccountLoader {
+        Account loadByAccountNumber(String accountNumber) throws SQLException;
+
+        Account loadByCardNo(String cardNo) throws SQLException;
+    }
+
+    enum EvictionPolicy {
+        // any access since the last sweep saves an account once
+        LRU,
+        // each access buys one more sweep, up to MAX_FREQUENCY
+        LFU
+    }
+
+    private static final int MAX_FREQUENCY = 15;
+    // negative cache of login inputs that are not card numbers: direct-mapped, entries expire
+    private static final int NON_CARD_SLOTS = 4096;
+    private static final long NON_CARD_TTL_MS = 60_000L;
+
+    private final ConcurrentMap<String, Account> accounts = new ConcurrentHashMap<>();
+    // secondary index: physical card number -> account, kept in step with `accounts`
+    private final ConcurrentMap<String, Account> accountsByCard = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes;
+    private final int stripeMask;
+
+    private volatile AccountLoader loader;
+    private volatile int maxAccounts = Integer.MAX_VALUE;
+    private volatile EvictionPolicy policy = EvictionPolicy.LRU;
+    // CLOCK hand: resident accounts in admission order
+    private final Queue<Account> clock = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicReferenceArray<NonCard> nonCards = new AtomicReferenceArray<>(NON_CARD_SLOTS);
+
+    AccountLedger() {
+        this(Runtime.getRuntime().availableProcessors() * 16);
+    }
+
+    AccountLedger(int minStripes) {
+        int n = Integer.highestOneBit(Math.max(1, minStripes - 1)) << 1;
+        stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) stripes[i] = new ReentrantLock();
+        stripeMask = n - 1;
+    }
+
+    // Turns the ledger into a bounded read-through cache over the given loader.
+    void configureCache(AccountLoader loader, int maxAccounts, EvictionPolicy policy) {
+        this.policy = policy;
+        this.maxAccounts = maxAccounts > 0 ? maxAccounts : Integer.MAX_VALUE;
+        this.loader = loader;
+        evictIfNeeded();
+    }
+
+    // Add (or replace) an account in both the primary map and the card index. A replacement
+    // read back from the DB with a new card number (snapshot delta) drops the old card's entry.
+    void register(Account account) {
+        Account previous = accounts.put(account.accountNumber, account);
+        if (previous != null && previous.cardNo != null) accountsByCard.remove(previous.cardNo, previous);
+        if (account.cardNo != null) {
+            accountsByCard.put(account.cardNo, account);
+            forgetNonCard(account.cardNo);
+        }
+        clock.offer(account);
+        evictIfNeeded();
+    }
+
+    // Hands an account over to another owner (shard rebalancing); the caller holds its lock.
+    // A stale CLOCK entry is skipped by the next sweep.
+    boolean remove(Account account) {
+        if (!accounts.remove(account.accountNumber, account)) return false;
+        if (account.cardNo != null) accountsByCard.remove(account.cardNo, account);
+        return true;
+    }
+
+    Account get(String accountNumber) {
+        Account account = accounts.get(accountNumber);
+        if (account != null) return touch(account);
+        AccountLoader l = loader;
+        if (l == null) return null;
+        misses.increment();
+        try {
+            return admit(l.loadByAccountNumber(accountNumber));
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Could not load account " + accountNumber + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    Account getByCard(String cardNo) {
+        Account account = accountsByCard.get(cardNo);
+        if (account != null) return touch(account);
+        AccountLoader l = loader;
+        if (l == null) return null;
+        misses.increment();
+        try {
+            return admit(l.loadByCardNo(cardNo));
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Could not load card " + cardNo + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    // Prefer the physical card number (card_no), fall back to account_number. Both resident
+    // maps are checked before the loader, and inputs the DB recently did not know as a card
+    // skip the card query, so a login by account number does not pay a card lookup each time.
+    Account findByCardOrAccount(String input) {
+        Account account = accountsByCard.get(input);
+        if (account == null) account = accounts.get(input);
+        if (account != null) return touch(account);
+        if (loader == null) return null;
+        if (!isKnownNonCard(input)) {
+            account = getByCard(input);
+            if (account != null) return account;
+            rememberNonCard(input);
+        }
+        return get(input);
+    }
+
+    private boolean isKnownNonCard(String input) {
+        NonCard e = nonCards.get(nonCardSlot(input));
+        return e != null && e.input.equals(input) && System.currentTimeMillis() < e.expiresAt;
+    }
+
+    private void rememberNonCard(String input) {
+        nonCards.set(nonCardSlot(input), new NonCard(input, System.currentTimeMillis() + NON_CARD_TTL_MS));
+    }
+
+    // a card number that appears (load, register, reassignment) is a card again right away
+    private void forgetNonCard(String cardNo) {
+        int slot = nonCardSlot(cardNo);
+        NonCard e = nonCards.get(slot);
+        if (e != null && e.input.equals(cardNo)) nonCards.compareAndSet(slot, e, null);
+    }
+
+    private static int nonCardSlot(String input) {
+        int h = input.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (NON_CARD_SLOTS - 1);
+    }
+
+    private static final class NonCard {
+        final String input;
+        final long expiresAt;
+
+        NonCard(String input, long expiresAt) {
+            this.input = input;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // True while this exact Account object is the ledger's copy (it may have been evicted and reloaded).
+    boolean isResident(Account account) {
+        return accounts.get(account.accountNumber) == account;
+    }
+
+    Collection<Account> all() {
+        return accounts.values();
+    }
+
+    int size() {
+        return accounts.size();
+    }
+
+    // Drops every account; only for startup, before the ledger is shared.
+    void clear() {
+        accounts.clear();
+        accountsByCard.clear();
+        clock.clear();
+    }
+
+    CacheStats cacheStats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), accounts.size(), maxAccounts);
+    }
+
+    ReentrantLock lockFor(String accountNumber) {
+        return stripes[stripeOf(accountNumber)];
+    }
+
+    // Keeps this copy resident until release(); false when it is no longer the ledger's copy.
+    boolean retain(Account account) {
+        ReentrantLock lock = lockFor(account.accountNumber);
+        lock.lock();
+        try {
+            if (!isResident(account)) return false;
+            account.retainCount++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(Account account) {
+        ReentrantLock lock = lockFor(account.accountNumber);
+        lock.lock();
+        try {
+            account.retainCount--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Runs the action while holding the stripe locks of both accounts, taken in stripe order.
+    <T, X extends Exception> T withBothLocked(Account a, Account b, LockedAction<T, X> action) throws X {
+        int sa = stripeOf(a.accountNumber);
+        int sb = stripeOf(b.accountNumber);
+        ReentrantLock first = stripes[Math.min(sa, sb)];
+        ReentrantLock second = stripes[Math.max(sa, sb)];
+        first.lock();
+        try {
+            if (second != first) second.lock();
+            try {
+                return action.run();
+            } finally {
+                if (second != first) second.unlock();
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    // Moves cents between two accounts in memory; false when the payer cannot cover it.
+    boolean transfer(Account from, Account to, long cents) {
+        return withBothLocked(from, to, () -> applyTransfer(from, to, cents));
+    }
+
+    // Caller must hold both accounts' locks (see withBothLocked).
+    static boolean applyTransfer(Account from, Account to, long cents) {
+        if (from.balanceCents < cents) return false;
+        from.balanceCents -= cents;
+        to.balanceCents += cents;
+        return true;
+    }
+
+    private Account touch(Account account) {
+        if (loader != null) {
+            hits.increment();
+            int score = account.cacheScore;
+            // only write when the score changes, so hot accounts do not bounce their cache line on every read
+            if (policy == EvictionPolicy.LRU) {
+                if (score == 0) account.cacheScore = 1;
+            } else if (score < MAX_FREQUENCY) {
+                account.cacheScore = score + 1;
+            }
+        }
+        return account;
+    }
+
+    // Publishes a freshly loaded account unless another thread got there first.
+    private Account admit(Account loaded) {
+        if (loaded == null) return null;
+        ReentrantLock lock = lockFor(loaded.accountNumber);
+        lock.lock();
+        try {
+            Account existing = accounts.putIfAbsent(loaded.accountNumber, loaded);
+            if (existing != null) return existing;
+            if (loaded.cardNo != null) {
+                accountsByCard.put(loaded.cardNo, loaded);
+                forgetNonCard(loaded.cardNo);
+            }
+            clock.offer(loaded);
+        } finally {
+            lock.unlock();
+        }
+        evictIfNeeded();
+        return loaded;
+    }
+
+    private void evictIfNeeded() {
+        if (loader == null || accounts.size() <= maxAccounts) return;
+        // one sweeper at a time; everyone else carries on and lets it catch up
+        if (!evictionLock.tryLock()) return;
+        try {
+            // bound the sweep so a cache full of dirty/locked accounts cannot spin forever
+            int budget = clock.size() * (MAX_FREQUENCY + 1);
+            while (accounts.size() > maxAccounts && budget-- > 0) {
+                Account candidate = clock.poll();
+                if (candidate == null) break;
+                if (accounts.get(candidate.accountNumber) != candidate) continue; // replaced or already gone
+                if (candidate.cacheScore > 0) {
+                    candidate.cacheScore--;
+                    clock.offer(candidate);
+                } else if (!tryEvict(candidate)) {
+                    clock.offer(candidate);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private boolean tryEvict(Account account) {
+        ReentrantLock lock = lockFor(account.accountNumber);
+        if (!lock.tryLock()) return false; // in use right now
+        try {
+            if (account.unsaved()) return false; // would lose changes the DB has not seen
+            if (account.retainCount > 0) return false; // a batch will still apply its committed deltas to it
+            if (!accounts.remove(account.accountNumber, account)) return true;
+            if (account.cardNo != null) accountsByCard.remove(account.cardNo, account);
+            evictions.increment();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int stripeOf(String accountNumber) {
+        int h = accountNumber.hashCode();
+        return (h ^ (h >>> 16)) & stripeMask;
+    }
+
+    interface LockedAction<T, X extends Exception> {
+        T run() throws X;
+    }
+
+    static final class CacheStats {
+        final long hits;
+        final long misses;
+        final long evictions;
+        final int resident;
+        final int capacity;
+
+        CacheStats(long hits, long misses, long evictions, int resident, int capacity) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.resident = resident;
+            this.capacity = capacity;
+        }
+
+        double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("cache[resident=%d capacity=%s hits=%d misses=%d hitRatio=%.3f missRatio=%.3f evictions=%d]",
+                    resident, capacity == Integer.MAX_VALUE ? "unbounded" : String.valueOf(capacity),
+                    hits, misses, hitRatio(), total() == 0 ? 0.0 : 1.0 - hitRatio(), evictions);
+        }
+
+        private long total() {
+            return hits + misses;
+        }
+    }
+}
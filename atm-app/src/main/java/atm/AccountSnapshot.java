@@ -0,0 +1,194 @@
+package atm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+// Compact binary copy of the account table, written on clean shutdown so the next start
+// can skip the full table scan: the file is memory-mapped, checked, decoded in parallel
+// and then brought up to date with the rows changed since `asOf` (see LocalAtmService).
+//
+// File layout: a 64-byte header (magic, version, account count, segment count, asOf,
+// body length, crc32c of the body), then the records, then a trailer with the offset and
+// record count of each segment. A record is the balance in cents followed by six
+// short-length-prefixed UTF-8 strings (-1 = null). Segments let the reader decode
+// SEGMENT_RECORDS accounts per task without scanning for record boundaries.
+final class AccountSnapshot {
+    private static final int MAGIC = 0x41544D53; // "ATMS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SEGMENT_RECORDS = 16_384;
+
+    final List<Account> accounts;
+    // newest accounts.updated_at the copy is known to include
+    final Timestamp asOf;
+
+    private AccountSnapshot(List<Account> accounts, Timestamp asOf) {
+        this.accounts = accounts;
+        this.asOf = asOf;
+    }
+
+    // Writes via a temporary file and an atomic rename, so a crash never leaves a half-written snapshot.
+    static void write(Path path, Collection<Account> accounts, Timestamp asOf) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        List<long[]> segments = new ArrayList<>();
+        long bodyLength;
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+            CountingOutputStream counter = new CountingOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), crc));
+            DataOutputStream out = new DataOutputStream(counter);
+            for (Account a : accounts) {
+                if (count % SEGMENT_RECORDS == 0) segments.add(new long[]{counter.written, 0});
+                out.writeLong(a.balanceCents);
+                writeString(out, a.accountNumber);
+                writeString(out, a.cardNo);
+                writeString(out, a.pin);
+                writeString(out, a.name);
+                writeString(out, a.ifscCode);
+                writeString(out, a.address);
+                segments.get(segments.size() - 1)[1]++;
+                count++;
+            }
+            long trailerOffset = counter.written;
+            for (long[] segment : segments) {
+                out.writeLong(segment[0]);
+                out.writeInt((int) segment[1]);
+            }
+            out.writeLong(trailerOffset);
+            out.flush();
+            bodyLength = counter.written;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(segments.size())
+                    .putLong(asOf.getTime()).putInt(asOf.getNanos())
+                    .putLong(bodyLength).putInt((int) crc.getValue());
+            header.clear();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Maps and validates the file; throws IOException if it is not a complete, intact snapshot.
+    static AccountSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) throw new IOException("snapshot is truncated");
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) throw new IOException("not a version " + VERSION + " account snapshot");
+            int count = map.getInt(8);
+            int segmentCount = map.getInt(12);
+            Timestamp asOf = new Timestamp(map.getLong(16));
+            asOf.setNanos(map.getInt(24));
+            long bodyLength = map.getLong(28);
+            int expectedCrc = map.getInt(36);
+            if (bodyLength != size - HEADER_SIZE || bodyLength > Integer.MAX_VALUE) throw new IOException("snapshot length does not match its header");
+            ByteBuffer body = map.slice(HEADER_SIZE, (int) bodyLength);
+            CRC32C crc = new CRC32C();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != expectedCrc) throw new IOException("snapshot checksum mismatch");
+
+            int trailerOffset = (int) body.getLong((int) bodyLength - 8);
+            long[] offsets = new long[segmentCount];
+            int[] counts = new int[segmentCount];
+            int total = 0;
+            for (int i = 0; i < segmentCount; i++) {
+                offsets[i] = body.getLong(trailerOffset + i * 12);
+                counts[i] = body.getInt(trailerOffset + i * 12 + 8);
+                total += counts[i];
+            }
+            if (total != count) throw new IOException("snapshot segment table does not match its header");
+
+            Account[][] decoded = new Account[segmentCount][];
+            IntStream.range(0, segmentCount).parallel().forEach(i -> {
+                int end = i + 1 < segmentCount ? (int) offsets[i + 1] : trailerOffset;
+                decoded[i] = decodeSegment(body, (int) offsets[i], end, counts[i]);
+            });
+            List<Account> accounts = new ArrayList<>(count);
+            for (Account[] segment : decoded) {
+                for (Account a : segment) accounts.add(a);
+            }
+            return new AccountSnapshot(accounts, asOf);
+        }
+    }
+
+    private static Account[] decodeSegment(ByteBuffer body, int start, int end, int count) {
+        // one bulk copy out of the mapping, then decode strings straight from the array
+        byte[] bytes = new byte[end - start];
+        body.get(start, bytes);
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        Account[] accounts = new Account[count];
+        for (int i = 0; i < count; i++) {
+            long balance = in.getLong();
+            String accountNumber = readString(in);
+            String cardNo = readString(in);
+            String pin = readString(in);
+            String name = readString(in);
+            String ifscCode = readString(in);
+            String address = readString(in);
+            accounts[i] = new Account(accountNumber, cardNo, pin, balance, name, ifscCode, address);
+        }
+        return accounts;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) throw new IOException("value too long for snapshot: " + bytes.length + " bytes");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int len = in.getShort();
+        if (len < 0) return null;
+        String s = new String(in.array(), in.position(), len, StandardCharsets.UTF_8);
+        in.position(in.position() + len);
+        return s;
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long written;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            written++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            written += len;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package atm;
+
+import java.util.Arrays;
+
+// Open-addressing map from account number to two long columns, expected and actual
+// cents, used by Reconciliation to sum millions of ledger rows without a boxed Long per
+// account. Entries live densely in insertion order; the hash table holds index + 1
+// (0 = empty). Not thread-safe: each partition fills its own, and finished tallies are
+// only read.
+final class AccountTally {
+    // actual balance of an account that is not in the accounts table (ledger rows only)
+    static final long NO_ACCOUNT = Long.MIN_VALUE;
+
+    private String[] keys;
+    private long[] expected;
+    private long[] actual;
+    private int[] table;
+    private int size;
+
+    AccountTally(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        keys = new String[capacity];
+        expected = new long[capacity];
+        actual = new long[capacity];
+        table = new int[Integer.highestOneBit(capacity - 1) << 2];
+    }
+
+    int size() {
+        return size;
+    }
+
+    String key(int i) {
+        return keys[i];
+    }
+
+    long expected(int i) {
+        return expected[i];
+    }
+
+    long actual(int i) {
+        return actual[i];
+    }
+
+    void addExpected(int i, long cents) {
+        expected[i] += cents;
+    }
+
+    void setActual(int i, long cents) {
+        actual[i] = cents;
+    }
+
+    // -1 when absent
+    int indexOf(String key) {
+        int mask = table.length - 1;
+        for (int slot = mix(key.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int e = table[slot];
+            if (e == 0) return -1;
+            if (keys[e - 1].equals(key)) return e - 1;
+        }
+    }
+
+    // Index of key, adding it (expected 0, actual NO_ACCOUNT) when absent.
+    int indexFor(String key) {
+        int mask = table.length - 1;
+        int slot = mix(key.hashCode()) & mask;
+        for (; ; slot = (slot + 1) & mask) {
+            int e = table[slot];
+            if (e == 0) break;
+            if (keys[e - 1].equals(key)) return e - 1;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            expected = Arrays.copyOf(expected, size * 2);
+            actual = Arrays.copyOf(actual, size * 2);
+        }
+        int i = size++;
+        keys[i] = key;
+        actual[i] = NO_ACCOUNT;
+        table[slot] = i + 1;
+        // load factor 1/2
+        if (size * 2 > table.length) rehash();
+        return i;
+    }
+
+    // Adds every expected amount of `other` to this tally.
+    void addAll(AccountTally other) {
+        for (int i = 0; i < other.size; i++) expected[indexFor(other.keys[i])] += other.expected[i];
+    }
+
+    private void rehash() {
+        int[] bigger = new int[table.length * 2];
+        int mask = bigger.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = mix(keys[i].hashCode()) & mask;
+            while (bigger[slot] != 0) slot = (slot + 1) & mask;
+            bigger[slot] = i + 1;
+        }
+        table = bigger;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
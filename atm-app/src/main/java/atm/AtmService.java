@@ -0,0 +1,72 @@
+package atm;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Headless ATM operations. Every call returns immediately; the work (and any JDBC)
+// happens on the service's own executor, so callers such as the Swing GUI never block.
+interface AtmService {
+    // Completes with the account, or null when the card/account number and PIN do not match.
+    CompletableFuture<Account> login(String cardOrAccount, String pin);
+
+    // Completes with the account for an account number or card number, or null.
+    CompletableFuture<Account> findAccount(String cardOrAccount);
+
+    CompletableFuture<Boolean> verifyPin(String accountNumber, String pin);
+
+    CompletableFuture<Long> balance(String accountNumber);
+
+    CompletableFuture<TransferResult> transfer(String fromAccount, String toAccount, long cents);
+
+    CompletableFuture<Void> changePin(String accountNumber, String newPin);
+
+    // Ledger rows involving the account, newest first: up to `limit` rows older than `after`
+    // (null for the newest page). Pass the last row of a page to fetch the next one.
+    CompletableFuture<List<TransactionRecord>> history(String accountNumber, TransactionRecord after, int limit);
+
+    // Transfers this node has seen for the account recently, newest first; served from memory.
+    CompletableFuture<List<TransactionRecord>> recentActivity(String accountNumber);
+
+    void shutdown();
+
+    // sent by ordinal over the switch, so new values go at the end. OUTCOME_UNKNOWN: the
+    // request reached the switch but no reply came back, or a cross-shard transfer was
+    // interrupted after the debit; money may or may not have moved.
+    enum TransferStatus { COMPLETED, INVALID_AMOUNT, RECIPIENT_NOT_FOUND, INSUFFICIENT_FUNDS, FAILED, LIMIT_EXCEEDED, SAME_ACCOUNT, OUTCOME_UNKNOWN }
+
+    final class TransferResult {
+        final TransferStatus status;
+        final String receipt;
+        final long balanceCents; // payer balance after the attempt
+        final String message;
+
+        TransferResult(TransferStatus status, String receipt, long balanceCents, String message) {
+            this.status = status;
+            this.receipt = receipt;
+            this.balanceCents = balanceCents;
+            this.message = message;
+        }
+    }
+
+    final class TransactionRecord {
+        // position in the account's history, higher is newer; history() pages on it
+        final long seq;
+        final String receipt;
+        final Timestamp occurredAt;
+        final String fromAccount;
+        final String toAccount;
+        final long cents;
+        final String description;
+
+        TransactionRecord(long seq, String receipt, Timestamp occurredAt, String fromAccount, String toAccount, long cents, String description) {
+            this.seq = seq;
+            this.receipt = receipt;
+            this.occurredAt = occurredAt;
+            this.fromAccount = fromAccount;
+            this.toAccount = toAccount;
+            this.cents = cents;
+            this.description = description;
+        }
+    }
+}
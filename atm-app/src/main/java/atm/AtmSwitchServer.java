@@ -0,0 +1,390 @@
+package atm;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+// Headless switch: many terminals share one AtmService (and so one account cache and one
+// connection pool) over the SwitchProtocol. A single selector thread does all socket I/O;
+// requests are handed to the service as they are decoded, so a terminal may pipeline as
+// many as MAX_IN_FLIGHT before the switch stops reading from it. Responses are queued by
+// whichever thread completes them and written by the selector thread.
+//
+// A connection acts for one account at a time: the one its last successful LOGIN
+// authenticated. Every other operation names an account and is refused unless it is that
+// one; FIND_ACCOUNT only ever returns it. The LOGIN reply carries a random session token
+// that a terminal sends as RESUME after reconnecting, so a dropped connection does not
+// mean logging in again.
+//
+// Configuration (system properties):
+//   atm.switch.host            address to listen on (default 127.0.0.1)
+//   atm.switch.port            port (default 7070)
+//   atm.switch.sessionIdleMs   a session token unused for this long is forgotten (default 900000)
+class AtmSwitchServer {
+    // pipelined requests per connection before reads pause (backpressure on that terminal)
+    private static final int MAX_IN_FLIGHT = 64;
+    // largest history page a terminal may ask for in one request
+    private static final int MAX_HISTORY_ROWS = 200;
+    private static final int INITIAL_READ_BUFFER = 512;
+    private static final long SESSION_IDLE_MILLIS = Long.getLong("atm.switch.sessionIdleMs", 15 * 60_000L);
+    private static final SecureRandom TOKENS = new SecureRandom();
+
+    private final AtmService service;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    // connections with responses queued since the selector last looked
+    private final Queue<Session> ready = new ConcurrentLinkedQueue<>();
+    // live session tokens, for RESUME
+    private final ConcurrentMap<Long, Login> logins = new ConcurrentHashMap<>();
+    private volatile long lastPruned;
+    private volatile boolean running = true;
+
+    // an account a LOGIN authenticated, and the token that stands for it
+    private static final class Login {
+        final long token;
+        final String account;
+        volatile long lastUsed;
+
+        Login(long token, String account, long now) {
+            this.token = token;
+            this.account = account;
+            this.lastUsed = now;
+        }
+
+        boolean expired(long now) {
+            return now - lastUsed > SESSION_IDLE_MILLIS;
+        }
+    }
+
+    AtmSwitchServer(AtmService service, InetSocketAddress address) throws IOException {
+        this.service = service;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(address, 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    InetSocketAddress address() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    void run() {
+        while (running) {
+            try {
+                selector.select();
+                Session s;
+                while ((s = ready.poll()) != null) s.flushQueued();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Session session = (Session) key.attachment();
+                        if (key.isReadable()) session.read();
+                        if (key.isValid() && key.isWritable()) session.write();
+                    }
+                }
+            } catch (IOException ex) {
+                System.err.println("Switch selector error: " + ex.getMessage());
+            }
+        }
+        for (SelectionKey key : selector.keys()) closeQuietly(key);
+        try {
+            selector.close();
+            server.close();
+        } catch (IOException ex) {
+            System.err.println("Failed to close switch socket: " + ex.getMessage());
+        }
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Session session = new Session(channel);
+            session.key = channel.register(selector, SelectionKey.OP_READ, session);
+        }
+    }
+
+    private Login newLogin(String account) {
+        long now = System.currentTimeMillis();
+        if (now - lastPruned > 1_000) {
+            lastPruned = now;
+            logins.values().removeIf(l -> l.expired(now));
+        }
+        Login login;
+        do {
+            login = new Login(TOKENS.nextLong(), account, now);
+        } while (login.token == 0 || logins.putIfAbsent(login.token, login) != null);
+        return login;
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private final class Session {
+        final SocketChannel channel;
+        SelectionKey key;
+        ByteBuffer in = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+        // selector thread only
+        final Queue<ByteBuffer> out = new ArrayDeque<>();
+        // filled by completing requests, moved to `out` by the selector thread
+        final Queue<ByteBuffer> completed = new ConcurrentLinkedQueue<>();
+        int inFlight;
+        // set when a LOGIN completes, so read from the service's threads too
+        volatile Login login;
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() {
+            int n;
+            try {
+                n = channel.read(in);
+            } catch (IOException ex) {
+                close();
+                return;
+            }
+            if (n < 0) {
+                close();
+                return;
+            }
+            in.flip();
+            while (in.remaining() >= 4) {
+                int length = in.getInt(in.position());
+                if (length < SwitchProtocol.HEADER - 4 || length > SwitchProtocol.MAX_FRAME) {
+                    System.err.println("Closing terminal connection after malformed frame of " + length + " bytes.");
+                    close();
+                    return;
+                }
+                if (in.remaining() < 4 + length) {
+                    if (in.capacity() < 4 + length) {
+                        ByteBuffer bigger = ByteBuffer.allocate(4 + length);
+                        bigger.put(in);
+                        in = bigger;
+                        return;
+                    }
+                    break;
+                }
+                ByteBuffer frame = in.slice(in.position() + 4, length);
+                in.position(in.position() + 4 + length);
+                dispatch(frame);
+            }
+            in.compact();
+            if (inFlight >= MAX_IN_FLIGHT) key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+
+        private void dispatch(ByteBuffer frame) {
+            int requestId = frame.getInt();
+            byte op = frame.get();
+            CompletableFuture<ByteBuffer> response;
+            try {
+                response = handle(requestId, op, frame);
+            } catch (BufferUnderflowException | IllegalArgumentException ex) {
+                response = CompletableFuture.completedFuture(error(requestId, "Malformed request: " + ex));
+            }
+            inFlight++;
+            response.whenComplete((buf, failure) -> {
+                completed.add(failure == null ? buf : error(requestId, messageOf(failure)));
+                ready.add(this);
+                selector.wakeup();
+            });
+        }
+
+        private CompletableFuture<ByteBuffer> handle(int requestId, byte op, ByteBuffer body) {
+            switch (op) {
+                case SwitchProtocol.LOGIN: {
+                    String cardOrAccount = SwitchProtocol.getString(body);
+                    String pin = SwitchProtocol.getString(body);
+                    // whatever this connection was logged in as, it is not any more
+                    dropLogin();
+                    return reply(requestId, service.login(cardOrAccount, pin), (w, account) -> {
+                        w.putAccount(account);
+                        if (account == null) return w;
+                        Login l = newLogin(account.accountNumber);
+                        login = l;
+                        return w.putLong(l.token);
+                    });
+                }
+                case SwitchProtocol.RESUME: {
+                    long token = body.getLong();
+                    Login l = logins.get(token);
+                    long now = System.currentTimeMillis();
+                    if (l == null || l.expired(now)) return CompletableFuture.completedFuture(error(requestId, "Session expired; log in again."));
+                    l.lastUsed = now;
+                    login = l;
+                    return CompletableFuture.completedFuture(new SwitchProtocol.FrameWriter(requestId, SwitchProtocol.OK).finish());
+                }
+                case SwitchProtocol.FIND_ACCOUNT: {
+                    String cardOrAccount = SwitchProtocol.getString(body);
+                    Login l = login;
+                    if (l == null) return denied(requestId, cardOrAccount);
+                    // other customers' accounts are not this terminal's business
+                    return reply(requestId, service.findAccount(cardOrAccount),
+                            (w, account) -> w.putAccount(account != null && actsFor(account.accountNumber) ? account : null));
+                }
+                case SwitchProtocol.VERIFY_PIN: {
+                    String accountNumber = SwitchProtocol.getString(body);
+                    String pin = SwitchProtocol.getString(body);
+                    if (!actsFor(accountNumber)) return denied(requestId, accountNumber);
+                    return reply(requestId, service.verifyPin(accountNumber, pin), (w, ok) -> w.putBoolean(ok));
+                }
+                case SwitchProtocol.BALANCE: {
+                    String accountNumber = SwitchProtocol.getString(body);
+                    if (!actsFor(accountNumber)) return denied(requestId, accountNumber);
+                    return reply(requestId, service.balance(accountNumber), (w, cents) -> w.putLong(cents));
+                }
+                case SwitchProtocol.TRANSFER: {
+                    String from = SwitchProtocol.getString(body);
+                    String to = SwitchProtocol.getString(body);
+                    long cents = body.getLong();
+                    if (!actsFor(from)) return denied(requestId, from);
+                    return reply(requestId, service.transfer(from, to, cents), (w, r) -> w.putByte((byte) r.status.ordinal())
+                            .putString(r.receipt).putLong(r.balanceCents).putString(r.message));
+                }
+                case SwitchProtocol.CHANGE_PIN: {
+                    String accountNumber = SwitchProtocol.getString(body);
+                    String pin = SwitchProtocol.getString(body);
+                    if (!actsFor(accountNumber)) return denied(requestId, accountNumber);
+                    return reply(requestId, service.changePin(accountNumber, pin), (w, ignored) -> w);
+                }
+                case SwitchProtocol.HISTORY: {
+                    String accountNumber = SwitchProtocol.getString(body);
+                    AtmService.TransactionRecord after = SwitchProtocol.getRecord(body);
+                    int limit = Math.min(Math.max(1, body.getInt()), MAX_HISTORY_ROWS);
+                    if (!actsFor(accountNumber)) return denied(requestId, accountNumber);
+                    return reply(requestId, service.history(accountNumber, after, limit), SwitchProtocol.FrameWriter::putRecords);
+                }
+                case SwitchProtocol.RECENT_ACTIVITY: {
+                    String accountNumber = SwitchProtocol.getString(body);
+                    if (!actsFor(accountNumber)) return denied(requestId, accountNumber);
+                    return reply(requestId, service.recentActivity(accountNumber), SwitchProtocol.FrameWriter::putRecords);
+                }
+                default:
+                    return CompletableFuture.completedFuture(error(requestId, "Unknown operation " + op));
+            }
+        }
+
+        // True when this connection is logged in as the account; keeps its session alive.
+        private boolean actsFor(String accountNumber) {
+            Login l = login;
+            if (l == null || !l.account.equals(accountNumber)) return false;
+            long now = System.currentTimeMillis();
+            if (l.expired(now)) {
+                dropLogin();
+                return false;
+            }
+            l.lastUsed = now;
+            return true;
+        }
+
+        private void dropLogin() {
+            Login l = login;
+            login = null;
+            if (l != null) logins.remove(l.token, l);
+        }
+
+        // selector thread: move completed responses to the write queue and try to send them
+        void flushQueued() {
+            ByteBuffer buf;
+            while ((buf = completed.poll()) != null) {
+                out.add(buf);
+                inFlight--;
+            }
+            if (!key.isValid()) return;
+            if (inFlight < MAX_IN_FLIGHT) key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            write();
+        }
+
+        void write() {
+            try {
+                ByteBuffer buf;
+                while ((buf = out.peek()) != null) {
+                    channel.write(buf);
+                    if (buf.hasRemaining()) break;
+                    out.poll();
+                }
+            } catch (IOException ex) {
+                close();
+                return;
+            }
+            int ops = key.interestOps();
+            key.interestOps(out.isEmpty() ? ops & ~SelectionKey.OP_WRITE : ops | SelectionKey.OP_WRITE);
+        }
+
+        void close() {
+            closeQuietly(key);
+            out.clear();
+        }
+    }
+
+    private interface BodyWriter<T> {
+        SwitchProtocol.FrameWriter write(SwitchProtocol.FrameWriter w, T value);
+    }
+
+    private static <T> CompletableFuture<ByteBuffer> reply(int requestId, CompletableFuture<T> result, BodyWriter<T> body) {
+        return result.thenApply(value -> body.write(new SwitchProtocol.FrameWriter(requestId, SwitchProtocol.OK), value).finish());
+    }
+
+    private static CompletableFuture<ByteBuffer> denied(int requestId, String accountNumber) {
+        return CompletableFuture.completedFuture(error(requestId, "Not logged in as account " + accountNumber + "."));
+    }
+
+    private static ByteBuffer error(int requestId, String message) {
+        return new SwitchProtocol.FrameWriter(requestId, SwitchProtocol.ERROR).putString(message).finish();
+    }
+
+    private static String messageOf(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        return cause.getMessage() != null ? cause.getMessage() : cause.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        LocalAtmService service = new LocalAtmService().start();
+        InetSocketAddress address = new InetSocketAddress(System.getProperty("atm.switch.host", "127.0.0.1"),
+                Integer.getInteger("atm.switch.port", 7070));
+        AtmSwitchServer server = new AtmSwitchServer(service, address);
+        Thread io = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            try {
+                io.join(5_000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            service.shutdown();
+        }, "atm-switch-shutdown"));
+        System.out.println("ATM switch listening on " + server.address());
+        server.run();
+    }
+}
@@ -0,0 +1,241 @@
+package atm;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Optional write-behind for account balances. In this mode a transfer's DB transaction
+// only inserts its ledger row (flagged pending_balance); the two balance deltas are
+// added to a per-account sum here, and every window all sums go out as one JDBC batch,
+// one UPDATE per account however many transfers touched it, together with clearing the
+// flags of the ledger rows they cover. A busy merchant account therefore takes one row
+// lock per window instead of one per transfer.
+//
+// The ledger row is the durable record: after a crash, recover() applies whatever rows
+// are still flagged. Accounts with unflushed deltas are marked balancePending so the cache
+// keeps them resident (their DB balance is stale); a flush clears only that flag, never
+// the dirty flag of a journaled or failed write. When more than maxPending transfers are
+// waiting, new transfers wait for the next flush. close() flushes what is left.
+//
+// The overdraft check happens in memory only, so this mode assumes this process is
+// the only one moving money on these accounts (e.g. an AtmSwitchServer).
+final class BalanceWriteBehind {
+    private static final String APPLY_DELTA_SQL = "UPDATE accounts SET balance = balance + ?, updated_at = CURRENT_TIMESTAMP WHERE account_number = ?";
+    private static final String CLEAR_PENDING_SQL = "UPDATE transactions SET pending_balance = FALSE WHERE receipt = ?";
+
+    private static final class Delta {
+        final Account account;
+        long cents;
+
+        Delta(Account account) {
+            this.account = account;
+        }
+    }
+
+    private final long windowMs;
+    private final int maxPending;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private final Thread flusher;
+
+    // guarded by `lock`; sorted so every flush locks rows in the same order
+    private Map<String, Delta> deltas = new TreeMap<>();
+    private List<String> receipts = new ArrayList<>();
+    private boolean closed;
+    private boolean failureLogged;
+
+    BalanceWriteBehind(long windowMs, int maxPending) {
+        this.windowMs = windowMs;
+        this.maxPending = maxPending;
+        flusher = new Thread(this::flushLoop, "atm-balance-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Backpressure: blocks while maxPending transfers are waiting to be flushed. Call
+    // before taking any account locks.
+    void awaitCapacity() throws SQLException {
+        lock.lock();
+        try {
+            while (receipts.size() >= maxPending && !closed) {
+                if (!flushed.await(windowMs * 10 + 1_000, TimeUnit.MILLISECONDS)) {
+                    throw new SQLTransientException("Balance write-behind is " + receipts.size() + " transfers behind");
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the balance write-behind", ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called once the ledger row (with pending_balance set) has been committed.
+    void add(Account payer, Account payee, long cents, String receipt) {
+        lock.lock();
+        try {
+            deltaFor(payer).cents -= cents;
+            deltaFor(payee).cents += cents;
+            receipts.add(receipt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Flushes everything still pending and stops the background thread.
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        flusher.interrupt();
+        try {
+            flusher.join(5_000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } catch (SQLException ex) {
+            System.err.println("Failed to flush balance updates on shutdown; they will be recovered from the ledger at next start: " + ex.getMessage());
+        }
+    }
+
+    private Delta deltaFor(Account account) {
+        // set under `lock`, so flush() can tell whether a newer delta arrived
+        account.balancePending = true;
+        return deltas.computeIfAbsent(account.accountNumber, k -> new Delta(account));
+    }
+
+    private void flushLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(windowMs);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            try {
+                flush();
+                failureLogged = false;
+            } catch (SQLException ex) {
+                if (!failureLogged) {
+                    System.err.println("Balance write-behind waiting for the DB: " + ex.getMessage());
+                    failureLogged = true;
+                }
+            }
+        }
+    }
+
+    // One transaction per window. On failure the batch is merged back and retried next time.
+    synchronized void flush() throws SQLException {
+        Map<String, Delta> batch;
+        List<String> batchReceipts;
+        lock.lock();
+        try {
+            if (receipts.isEmpty()) return;
+            batch = deltas;
+            batchReceipts = receipts;
+            deltas = new TreeMap<>();
+            receipts = new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            write(batch, batchReceipts);
+        } catch (SQLException ex) {
+            lock.lock();
+            try {
+                for (Delta d : batch.values()) deltaFor(d.account).cents += d.cents;
+                batchReceipts.addAll(receipts);
+                receipts = batchReceipts;
+            } finally {
+                lock.unlock();
+            }
+            throw ex;
+        }
+        lock.lock();
+        try {
+            for (Delta d : batch.values()) {
+                if (!deltas.containsKey(d.account.accountNumber)) d.account.balancePending = false;
+            }
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void write(Map<String, Delta> batch, List<String> batchReceipts) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement balances = conn.prepareStatement(APPLY_DELTA_SQL);
+                 PreparedStatement ledger = conn.prepareStatement(CLEAR_PENDING_SQL)) {
+                for (Delta d : batch.values()) {
+                    if (d.cents == 0) continue;
+                    balances.setBigDecimal(1, Money.toDecimal(d.cents));
+                    balances.setString(2, d.account.accountNumber);
+                    balances.addBatch();
+                }
+                balances.executeBatch();
+                for (String receipt : batchReceipts) {
+                    ledger.setString(1, receipt);
+                    ledger.addBatch();
+                }
+                ledger.executeBatch();
+                conn.commit();
+            } catch (SQLException ex) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackEx) {
+                    ex.addSuppressed(rollbackEx);
+                }
+                throw ex;
+            }
+        }
+    }
+
+    // Startup: applies the balance deltas of ledger rows a crash left flagged. Returns the row count.
+    static int recover() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            Map<String, Long> sums = new TreeMap<>();
+            List<String> recovered = new ArrayList<>();
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT receipt, from_card, to_card, amount FROM transactions WHERE pending_balance = TRUE");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long cents = Money.fromDecimal(rs.getBigDecimal(4));
+                    recovered.add(rs.getString(1));
+                    sums.merge(rs.getString(2), -cents, Long::sum);
+                    sums.merge(rs.getString(3), cents, Long::sum);
+                }
+            }
+            if (recovered.isEmpty()) return 0;
+            try (PreparedStatement balances = conn.prepareStatement(APPLY_DELTA_SQL);
+                 PreparedStatement ledger = conn.prepareStatement(CLEAR_PENDING_SQL)) {
+                for (Map.Entry<String, Long> e : sums.entrySet()) {
+                    balances.setBigDecimal(1, Money.toDecimal(e.getValue()));
+                    balances.setString(2, e.getKey());
+                    balances.addBatch();
+                }
+                balances.executeBatch();
+                for (String receipt : recovered) {
+                    ledger.setString(1, receipt);
+                    ledger.addBatch();
+                }
+                ledger.executeBatch();
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+            return recovered.size();
+        }
+    }
+}
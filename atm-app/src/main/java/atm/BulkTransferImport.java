@@ -0,0 +1,309 @@
+package atm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Batch mode for payroll-style files: streams a CSV of "from,to,amount" rows (an optional
+// header line is skipped) and writes one result line per row:
+//
+//   line,from,to,amount,status,receipt,message
+//
+// The file is never held in memory. Rows are partitioned by payer, each partition with
+// its own worker and a bounded queue (a slow partition makes the reader wait), so a
+// payer's rows are applied in file order while transfers of different payers run in
+// parallel. Workers hand up to batchSize rows at a time to TransferEngine.transferBatch,
+// one DB transaction per batch. Result lines come out in completion order, not file order.
+//
+// Bulk transfers are authorized per file and do not count against TransferLimits. An
+// import only runs against the DB: on the in-memory fallback accounts it is refused.
+//
+//   java -cp atm-app.jar atm.BulkTransferImport payroll.csv results.csv
+//
+// Configuration (system properties):
+//   atm.bulk.partitions  parallel workers (default: 2 x cores)
+//   atm.bulk.batchSize   rows per DB transaction (default 500)
+final class BulkTransferImport {
+    // ledger description of every imported row; TransferLimits.rebuild() skips these
+    static final String DESCRIPTION = "Bulk transfer";
+    // rows a partition may have queued before the reader waits for it
+    private static final int QUEUE_ROWS = 4_096;
+
+    private static final class Row extends TransferEngine.BatchTransfer {
+        final long line;
+        final long receiptId;
+
+        Row(long line, Account from, Account to, long cents, long receiptId) {
+            super(from, to, cents, ReceiptCodes.format(receiptId), DESCRIPTION);
+            this.line = line;
+            this.receiptId = receiptId;
+        }
+    }
+
+    // a parsed line, accounts not yet looked up
+    private static final class Pending {
+        final long line;
+        final String from;
+        final String to;
+        final long cents;
+
+        Pending(long line, String from, String to, long cents) {
+            this.line = line;
+            this.from = from;
+            this.to = to;
+            this.cents = cents;
+        }
+    }
+
+    // sent down every queue once the file is read
+    private static final Pending END = new Pending(-1, null, null, 0);
+
+    static final class Summary {
+        final long rows;
+        final long completed;
+        final long rejected;
+        final long failed;
+        final long centsMoved;
+        final long elapsedNanos;
+
+        Summary(long rows, long completed, long rejected, long failed, long centsMoved, long elapsedNanos) {
+            this.rows = rows;
+            this.completed = completed;
+            this.rejected = rejected;
+            this.failed = failed;
+            this.centsMoved = centsMoved;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format(Locale.ROOT, "%d rows in %.1f s (%.0f rows/s): %d completed ($%s), %d rejected, %d failed",
+                    rows, seconds, rows / Math.max(seconds, 1e-9), completed, Money.format(centsMoved), rejected, failed);
+        }
+    }
+
+    private final AccountLedger ledger;
+    private final TransferEngine engine;
+    private final int partitions;
+    private final int batchSize;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder centsMoved = new LongAdder();
+    // first failure writing results; rows are still applied (and workers keep draining) after it
+    private volatile IOException writeFailure;
+
+    BulkTransferImport(LocalAtmService service, int partitions, int batchSize) {
+        // a file of real payroll rows must never be "applied" to the demo accounts and reported as done
+        if (!service.persistent()) throw new IllegalStateException("Accounts could not be loaded from the DB; refusing to import transfers");
+        this.ledger = service.ledger();
+        this.engine = service.transferEngine();
+        this.partitions = partitions;
+        this.batchSize = batchSize;
+    }
+
+    static BulkTransferImport fromProperties(LocalAtmService service) {
+        return new BulkTransferImport(service, Integer.getInteger("atm.bulk.partitions", 2 * Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("atm.bulk.batchSize", 500));
+    }
+
+    Summary run(Reader in, Writer out) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+        BufferedWriter results = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out, 1 << 16);
+        results.write("line,from,to,amount,status,receipt,message\n");
+        List<BlockingQueue<Pending>> queues = new ArrayList<>(partitions);
+        List<Thread> workers = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(QUEUE_ROWS);
+            queues.add(queue);
+            Thread worker = new Thread(() -> drain(queue, results), "atm-bulk-" + p);
+            worker.start();
+            workers.add(worker);
+        }
+        long rows = 0;
+        try {
+            String line;
+            long lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) continue;
+                String[] fields = line.split(",", -1);
+                if (lineNo == 1 && fields.length >= 3 && !isAmount(fields[2])) continue; // header
+                rows++;
+                if (fields.length != 3) {
+                    reject(results, lineNo, line, "expected from,to,amount");
+                    continue;
+                }
+                String from = fields[0].trim();
+                String to = fields[1].trim();
+                long cents;
+                try {
+                    cents = Money.parseCents(fields[2]);
+                } catch (NumberFormatException ex) {
+                    reject(results, lineNo, line, "invalid amount");
+                    continue;
+                }
+                if (cents <= 0) {
+                    reject(results, lineNo, line, "invalid amount");
+                } else if (from.equals(to)) {
+                    reject(results, lineNo, line, "payer and payee are the same account");
+                } else {
+                    queues.get(Math.floorMod(from.hashCode(), partitions)).put(new Pending(lineNo, from, to, cents));
+                }
+            }
+        } finally {
+            for (BlockingQueue<Pending> queue : queues) queue.put(END);
+            for (Thread worker : workers) worker.join();
+        }
+        if (writeFailure != null) throw writeFailure;
+        results.flush();
+        return new Summary(rows, completed.sum(), rejected.sum(), failed.sum(), centsMoved.sum(), System.nanoTime() - start);
+    }
+
+    // Worker loop: looks up the accounts of up to batchSize queued rows and applies them as one batch.
+    private void drain(BlockingQueue<Pending> queue, BufferedWriter results) {
+        List<Pending> taken = new ArrayList<>(batchSize);
+        List<Row> batch = new ArrayList<>(batchSize);
+        StringBuilder out = new StringBuilder();
+        boolean done = false;
+        while (!done) {
+            try {
+                taken.add(queue.take());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(taken, batchSize - 1);
+            for (Pending p : taken) {
+                if (p == END) {
+                    done = true;
+                    continue;
+                }
+                Account from;
+                Account to;
+                try {
+                    from = ledger.get(p.from);
+                    to = ledger.get(p.to);
+                } catch (RuntimeException ex) {
+                    failed.increment();
+                    appendResult(out, p.line, p.from, p.to, p.cents, "FAILED", null, "account lookup failed: " + ex.getMessage());
+                    continue;
+                }
+                if (from == null || to == null) {
+                    rejected.increment();
+                    appendResult(out, p.line, p.from, p.to, p.cents, AtmService.TransferStatus.RECIPIENT_NOT_FOUND.name(), null,
+                            (from == null ? "payer" : "payee") + " account not found");
+                    continue;
+                }
+                batch.add(new Row(p.line, from, to, p.cents, ReceiptCodes.next()));
+            }
+            if (!batch.isEmpty()) {
+                long start = System.nanoTime();
+                boolean batchFailed = false;
+                try {
+                    engine.transferBatch(batch);
+                } catch (RuntimeException ex) {
+                    // e.g. an account reload failing mid-batch; the worker must keep draining or the
+                    // reader blocks on its full queue. Rows already given a status were applied as such.
+                    batchFailed = true;
+                    for (Row r : batch) {
+                        if (r.status != null) continue;
+                        r.status = AtmService.TransferStatus.FAILED;
+                        r.message = "transfer failed: " + ex.getMessage();
+                    }
+                }
+                Metrics.record(Metrics.Operation.TRANSFER_BATCH, start, batchFailed);
+                long now = System.currentTimeMillis();
+                for (Row r : batch) {
+                    if (r.status == AtmService.TransferStatus.COMPLETED) {
+                        completed.increment();
+                        centsMoved.add(r.cents);
+                        r.from.addTransaction(r.receiptId, now, r.to.accountNumber, r.cents, RecentTransactions.TRANSFER_OUT);
+                        r.to.addTransaction(r.receiptId, now, r.from.accountNumber, r.cents, RecentTransactions.TRANSFER_IN);
+                        appendResult(out, r.line, r.from.accountNumber, r.to.accountNumber, r.cents, r.status.name(), r.receipt, null);
+                    } else {
+                        (r.status == AtmService.TransferStatus.FAILED ? failed : rejected).increment();
+                        appendResult(out, r.line, r.from.accountNumber, r.to.accountNumber, r.cents, r.status.name(), null,
+                                r.status == AtmService.TransferStatus.FAILED ? r.message : "insufficient funds");
+                    }
+                }
+            }
+            write(results, out);
+            taken.clear();
+            batch.clear();
+        }
+    }
+
+    private void reject(BufferedWriter results, long line, String raw, String message) {
+        rejected.increment();
+        StringBuilder out = new StringBuilder();
+        out.append(line).append(",,,,INVALID,,")
+                .append(csv(message + ": " + raw)).append('\n');
+        write(results, out);
+    }
+
+    private static void appendResult(StringBuilder out, long line, String from, String to, long cents, String status, String receipt, String message) {
+        out.append(line).append(',').append(csv(from)).append(',').append(csv(to)).append(',').append(Money.format(cents))
+                .append(',').append(status).append(',').append(receipt == null ? "" : receipt).append(',')
+                .append(message == null ? "" : csv(message)).append('\n');
+    }
+
+    // one write per batch, so lines of different workers never interleave
+    private void write(BufferedWriter results, StringBuilder out) {
+        if (out.length() == 0) return;
+        synchronized (results) {
+            try {
+                if (writeFailure == null) results.append(out);
+            } catch (IOException ex) {
+                writeFailure = ex;
+            }
+        }
+        out.setLength(0);
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static boolean isAmount(String field) {
+        try {
+            Money.parseCents(field);
+            return true;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: BulkTransferImport <transfers.csv> <results.csv>");
+            System.exit(2);
+        }
+        LocalAtmService service = new LocalAtmService().start();
+        if (!service.persistent()) {
+            System.err.println("Accounts could not be loaded from the DB; nothing was imported.");
+            service.shutdown();
+            System.exit(1);
+        }
+        try (Reader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+             Writer out = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            System.out.println("Imported " + fromProperties(service).run(in, out) + ".");
+        } finally {
+            service.shutdown();
+        }
+    }
+}
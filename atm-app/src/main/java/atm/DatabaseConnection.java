@@ -0,0 +1,375 @@
+package atm;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded pool of JDBC connections. Callers keep the usual
+// try (Connection conn = DatabaseConnection.getConnection()) pattern: closing the
+// handed-out connection returns the physical connection to the pool instead of
+// tearing it down, and prepareStatement() is served from a per-connection cache.
+//
+// Configured through system properties:
+//   atm.db.url / atm.db.user / atm.db.password   JDBC target (pool is disabled when no url is set)
+//   atm.db.pool.maxSize                            max physical connections (default 8)
+//   atm.db.pool.maxWaitMs                          max time to wait for a free connection (default 2000)
+//   atm.db.pool.validateAfterIdleMs                idle time after which a connection is re-validated (default 30000)
+//   atm.db.pool.statementCacheSize                 prepared statements cached per connection (default 32)
+class DatabaseConnection {
+    private static final String URL = System.getProperty("atm.db.url");
+    private static final String USER = System.getProperty("atm.db.user");
+    private static final String PASSWORD = System.getProperty("atm.db.password");
+    private static final int MAX_SIZE = Integer.getInteger("atm.db.pool.maxSize", 8);
+    private static final long MAX_WAIT_MS = Long.getLong("atm.db.pool.maxWaitMs", 2000L);
+    private static final long VALIDATE_AFTER_IDLE_MS = Long.getLong("atm.db.pool.validateAfterIdleMs", 30000L);
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("atm.db.pool.statementCacheSize", 32);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private static final Semaphore permits = new Semaphore(MAX_SIZE, true);
+    // LIFO so the most recently used (and most likely still healthy) connection is reused first
+    private static final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private static final AtomicInteger active = new AtomicInteger();
+    private static final AtomicInteger physical = new AtomicInteger();
+    private static final AtomicLong acquisitions = new AtomicLong();
+    private static final AtomicLong totalWaitNanos = new AtomicLong();
+    private static final AtomicLong maxWaitNanos = new AtomicLong();
+    private static final AtomicLong timeouts = new AtomicLong();
+    private static final AtomicLong validationFailures = new AtomicLong();
+    // set by shutdown(): connections returned afterwards are closed instead of pooled
+    private static volatile boolean shutDown;
+
+    public static Connection getConnection() throws SQLException {
+        if (URL == null) {
+            throw new SQLException("Database connection not available in this build.");
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Connection conn = acquire(start);
+            failed = false;
+            return conn;
+        } finally {
+            Metrics.record(Metrics.Operation.JDBC_CONNECT, start, failed);
+        }
+    }
+
+    private static Connection acquire(long start) throws SQLException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(MAX_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", ex);
+        }
+        long waited = System.nanoTime() - start;
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new SQLTimeoutException("Timed out after " + MAX_WAIT_MS + " ms waiting for a pooled connection");
+        }
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (pc.isUsable()) break;
+                validationFailures.incrementAndGet();
+                pc.destroy();
+            }
+            if (pc == null) {
+                pc = new PooledConnection(DriverManager.getConnection(URL, USER, PASSWORD));
+                physical.incrementAndGet();
+            }
+            acquisitions.incrementAndGet();
+            active.incrementAndGet();
+            return pc.lease();
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    public static Stats stats() {
+        return new Stats(active.get(), idle.size(), physical.get(), MAX_SIZE, acquisitions.get(),
+                totalWaitNanos.get(), maxWaitNanos.get(), timeouts.get(), validationFailures.get());
+    }
+
+    // Closes every idle physical connection; leased connections are closed as they come back.
+    public static void shutdown() {
+        shutDown = true;
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) pc.destroy();
+    }
+
+    // Upper bound on physical connections, for batch jobs that size their parallelism to the pool.
+    static int maxPoolSize() {
+        return MAX_SIZE;
+    }
+
+    private static void release(PooledConnection pc, boolean reusable) {
+        active.decrementAndGet();
+        if (reusable && !shutDown) {
+            pc.lastReturned = System.currentTimeMillis();
+            idle.offerFirst(pc);
+            // lost the race with shutdown()'s drain
+            if (shutDown && idle.remove(pc)) pc.destroy();
+        } else {
+            pc.destroy();
+        }
+        permits.release();
+    }
+
+    // Point-in-time view of the pool, e.g. for logging or a status screen.
+    static final class Stats {
+        final int active;
+        final int idle;
+        final int physical;
+        final int maxSize;
+        final long acquisitions;
+        final long totalWaitNanos;
+        final long maxWaitNanos;
+        final long timeouts;
+        final long validationFailures;
+
+        Stats(int active, int idle, int physical, int maxSize, long acquisitions, long totalWaitNanos,
+              long maxWaitNanos, long timeouts, long validationFailures) {
+            this.active = active;
+            this.idle = idle;
+            this.physical = physical;
+            this.maxSize = maxSize;
+            this.acquisitions = acquisitions;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.timeouts = timeouts;
+            this.validationFailures = validationFailures;
+        }
+
+        double averageWaitMillis() {
+            return acquisitions == 0 ? 0.0 : totalWaitNanos / 1_000_000.0 / acquisitions;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("pool[active=%d idle=%d physical=%d max=%d acquisitions=%d avgWait=%.3fms maxWait=%.3fms timeouts=%d invalid=%d]",
+                    active, idle, physical, maxSize, acquisitions, averageWaitMillis(), maxWaitNanos / 1_000_000.0,
+                    timeouts, validationFailures);
+        }
+    }
+
+    // One physical connection plus its statement cache. Each lease() hands out a fresh
+    // logical handle so a stale handle held after close() cannot touch the next borrower's work.
+    private static final class PooledConnection {
+        private final Connection physicalConnection;
+        private final Map<String, CachedStatement> statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= STATEMENT_CACHE_SIZE || eldest.getValue().inUse) return false;
+                closeQuietly(eldest.getValue().statement);
+                return true;
+            }
+        };
+        volatile long lastReturned = System.currentTimeMillis();
+        // set by a fatal SQLException from the connection or any of its statements during a lease
+        volatile boolean broken;
+
+        PooledConnection(Connection physicalConnection) {
+            this.physicalConnection = physicalConnection;
+        }
+
+        boolean isUsable() {
+            try {
+                if (physicalConnection.isClosed()) return false;
+                if (System.currentTimeMillis() - lastReturned < VALIDATE_AFTER_IDLE_MS) return true;
+                return physicalConnection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException ex) {
+                return false;
+            }
+        }
+
+        Connection lease() {
+            broken = false;
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Lease());
+        }
+
+        void destroy() {
+            for (CachedStatement cs : statements.values()) closeQuietly(cs.statement);
+            statements.clear();
+            closeQuietly(physicalConnection);
+            physical.decrementAndGet();
+        }
+
+        // Marks the connection for destruction when ex says it is dead; returns ex for rethrowing.
+        SQLException noteFailure(SQLException ex) {
+            if (isFatal(ex)) broken = true;
+            return ex;
+        }
+
+        private final class Lease implements InvocationHandler {
+            private boolean closed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                switch (name) {
+                    case "close":
+                        if (!closed) {
+                            closed = true;
+                            release(PooledConnection.this, !broken && reset());
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed || physicalConnection.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Pooled" + physicalConnection;
+                    default:
+                        break;
+                }
+                if (closed) throw new SQLException("Connection has already been returned to the pool");
+                try {
+                    if (name.equals("prepareStatement") && args.length == 1) {
+                        return prepareCached((Connection) proxy, (String) args[0]);
+                    }
+                    Object result = invokeTimed(physicalConnection, method, args);
+                    if (result instanceof Statement) return timedStatement(PooledConnection.this, (Connection) proxy, (Statement) result);
+                    return result;
+                } catch (SQLException ex) {
+                    throw noteFailure(ex);
+                }
+            }
+
+            private PreparedStatement prepareCached(Connection owner, String sql) throws SQLException {
+                CachedStatement cs = statements.get(sql);
+                if (cs != null && cs.inUse) {
+                    // the same SQL is already open on this lease; hand out an uncached statement
+                    return (PreparedStatement) timedStatement(PooledConnection.this, owner, physicalConnection.prepareStatement(sql));
+                }
+                if (cs == null) {
+                    cs = new CachedStatement(physicalConnection.prepareStatement(sql));
+                    statements.put(sql, cs);
+                }
+                cs.inUse = true;
+                return cs.handle(PooledConnection.this, owner);
+            }
+
+            // Leave the connection as a fresh one would be for the next borrower.
+            private boolean reset() {
+                for (CachedStatement cs : statements.values()) cs.inUse = false;
+                try {
+                    if (!physicalConnection.getAutoCommit()) {
+                        physicalConnection.rollback();
+                        physicalConnection.setAutoCommit(true);
+                    }
+                    physicalConnection.clearWarnings();
+                    return true;
+                } catch (SQLException ex) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private static final class CachedStatement {
+        final PreparedStatement statement;
+        boolean inUse;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement handle(PooledConnection pc, Connection owner) {
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                if (inUse) {
+                                    inUse = false;
+                                    statement.clearParameters();
+                                    statement.clearBatch();
+                                }
+                                return null;
+                            case "isClosed":
+                                return !inUse || statement.isClosed();
+                            case "getConnection":
+                                return owner;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                break;
+                        }
+                        if (!inUse) throw new SQLException("Statement has already been closed");
+                        try {
+                            return invokeTimed(statement, method, args);
+                        } catch (SQLException ex) {
+                            throw pc.noteFailure(ex);
+                        }
+                    });
+        }
+    }
+
+    // Statements that bypass the cache still report their executions to Metrics, and their
+    // fatal failures to the connection.
+    private static Statement timedStatement(PooledConnection pc, Connection owner, Statement statement) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    try {
+                        return invokeTimed(statement, method, args);
+                    } catch (SQLException ex) {
+                        throw pc.noteFailure(ex);
+                    }
+            }
+        });
+    }
+
+    // Unwraps reflective calls; execute*, commit and rollback are the DB round trips worth timing.
+    private static Object invokeTimed(Object target, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        boolean timed = name.startsWith("execute") || name.equals("commit") || name.equals("rollback");
+        long start = timed ? System.nanoTime() : 0L;
+        boolean failed = true;
+        try {
+            Object result = method.invoke(target, args);
+            failed = false;
+            return result;
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        } finally {
+            if (timed) Metrics.record(Metrics.Operation.JDBC_EXECUTE, start, failed);
+        }
+    }
+
+    // SQLState class 08 = connection exception; such connections are not returned to the pool.
+    private static boolean isFatal(SQLException ex) {
+        String state = ex.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    private static void closeQuietly(AutoCloseable c) {
+        try {
+            c.close();
+        } catch (Exception ignored) {
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package atm;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+// Reads accounts from the `accounts` table for the ledger's read-through cache.
+class JdbcAccountLoader implements AccountLedger.AccountLoader {
+    // read by position in map(); address, when present, is column 7
+    private static final String COLUMNS = "account_number, card_no, pin, name, ifsc_code, balance";
+    // rows per round trip for bulk reads (atm.db.fetchSize); drivers default to 10 or so
+    static final int BULK_FETCH_SIZE = Integer.getInteger("atm.db.fetchSize", 10_000);
+    // rows handed to a worker at a time when bulk loading
+    private static final int CHUNK_ROWS = 4_096;
+
+    // address may be absent from some schemas; resolved once on first use
+    private volatile Boolean hasAddress;
+
+    @Override
+    public Account loadByAccountNumber(String accountNumber) throws SQLException {
+        return loadOne("account_number", accountNumber);
+    }
+
+    @Override
+    public Account loadByCardNo(String cardNo) throws SQLException {
+        return loadOne("card_no", cardNo);
+    }
+
+    // Loads the given accounts (e.g. known hot accounts) and hands each one found to the sink.
+    int loadEach(Collection<String> accountNumbers, Consumer<Account> sink) throws SQLException {
+        int loaded = 0;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(selectBy("account_number", conn))) {
+            for (String accountNumber : accountNumbers) {
+                ps.setString(1, accountNumber);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        sink.accept(map(rs));
+                        loaded++;
+                    }
+                }
+            }
+        }
+        return loaded;
+    }
+
+    // Streams the whole table to the sink (used when the cache is unbounded). The sink
+    // must be thread-safe: rows are read on this thread but turned into Accounts and
+    // handed over on the common fork/join pool, a chunk at a time.
+    int loadAll(Consumer<Account> sink) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT " + columns(conn) + " FROM accounts")) {
+            return loadBulk(ps, sink);
+        }
+    }
+
+    // Accounts whose updated_at is at or after the given time, for refreshing a snapshot.
+    int loadChangedSince(Timestamp since, Consumer<Account> sink) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT " + columns(conn) + " FROM accounts WHERE updated_at >= ?")) {
+            ps.setTimestamp(1, since);
+            return loadBulk(ps, sink);
+        }
+    }
+
+    // Newest updated_at in the table, read before a load so rows changed during or after
+    // it are picked up by the next loadChangedSince (less a margin for transactions still
+    // open, see LocalAtmService.loadFullTable). Null for an empty table.
+    Timestamp lastUpdated() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT MAX(updated_at) FROM accounts");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getTimestamp(1) : null;
+        }
+    }
+
+    // Hands every account number in the table to the sink and returns how many there were,
+    // for checking a snapshot-based load against the table row by row.
+    int forEachAccountNumber(Consumer<String> sink) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT account_number FROM accounts")) {
+            ps.setFetchSize(BULK_FETCH_SIZE);
+            int count = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    sink.accept(rs.getString(1));
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private int loadBulk(PreparedStatement ps, Consumer<Account> sink) throws SQLException {
+        ps.setFetchSize(BULK_FETCH_SIZE);
+        int loaded = 0;
+        int width = columnCount();
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            Object[] chunk = new Object[CHUNK_ROWS * width];
+            int rows = 0;
+            while (rs.next()) {
+                // only the raw column values are read here; the ResultSet is not shareable
+                for (int c = 0; c < width; c++) {
+                    chunk[rows * width + c] = c == 5 ? rs.getBigDecimal(6) : rs.getString(c + 1);
+                }
+                loaded++;
+                if (++rows == CHUNK_ROWS) {
+                    chunks.add(mapChunk(chunk, rows, width, sink));
+                    chunk = new Object[CHUNK_ROWS * width];
+                    rows = 0;
+                }
+            }
+            if (rows > 0) chunks.add(mapChunk(chunk, rows, width, sink));
+        } finally {
+            try {
+                CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException ex) {
+                throw new SQLException("Failed to map account rows: " + ex.getCause(), ex.getCause());
+            }
+        }
+        return loaded;
+    }
+
+    private static CompletableFuture<Void> mapChunk(Object[] chunk, int rows, int width, Consumer<Account> sink) {
+        return CompletableFuture.runAsync(() -> {
+            for (int r = 0; r < rows; r++) {
+                int o = r * width;
+                sink.accept(new Account((String) chunk[o], (String) chunk[o + 1], (String) chunk[o + 2],
+                        Money.fromDecimal((BigDecimal) chunk[o + 5]), (String) chunk[o + 3], (String) chunk[o + 4],
+                        width > 6 ? (String) chunk[o + 6] : null));
+            }
+        });
+    }
+
+    private Account loadOne(String keyColumn, String key) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(selectBy(keyColumn, conn))) {
+            ps.setString(1, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? map(rs) : null;
+            }
+        }
+    }
+
+    private String selectBy(String keyColumn, Connection conn) throws SQLException {
+        return "SELECT " + columns(conn) + " FROM accounts WHERE " + keyColumn + " = ?";
+    }
+
+    private String columns(Connection conn) throws SQLException {
+        if (hasAddress == null) {
+            // an empty result still carries the table's column metadata
+            try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM accounts WHERE 1 = 0");
+                 ResultSet rs = ps.executeQuery()) {
+                ResultSetMetaData md = rs.getMetaData();
+                boolean found = false;
+                for (int i = 1; i <= md.getColumnCount(); i++) {
+                    if (md.getColumnLabel(i).equalsIgnoreCase("address") || md.getColumnName(i).equalsIgnoreCase("address")) found = true;
+                }
+                hasAddress = found;
+            }
+        }
+        return columnList();
+    }
+
+    private String columnList() {
+        return Boolean.TRUE.equals(hasAddress) ? COLUMNS + ", address" : COLUMNS;
+    }
+
+    private int columnCount() {
+        return Boolean.TRUE.equals(hasAddress) ? 7 : 6;
+    }
+
+    // By position, matching COLUMNS: label lookups cost a metadata scan per call on some drivers.
+    private Account map(ResultSet rs) throws SQLException {
+        String address = Boolean.TRUE.equals(hasAddress) ? rs.getString(7) : null;
+        return new Account(rs.getString(1), rs.getString(2), rs.getString(3),
+                Money.fromDecimal(rs.getBigDecimal(6)), rs.getString(4), rs.getString(5), address);
+    }
+}
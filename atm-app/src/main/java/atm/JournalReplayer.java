@@ -0,0 +1,167 @@
+package atm;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.util.List;
+
+// Drains the write-ahead journal into the database, oldest record first, each record in
+// its own transaction. Transfers are keyed by receipt: if the ledger row already exists
+// the record was applied before a crash and is skipped, so replay is safe to repeat.
+// Runs as a background thread that retries every interval until the DB is reachable.
+//
+// A record the DB refuses for any reason other than being unreachable (the payer can no
+// longer cover it, an account is gone, a constraint fails) is not retried forever and not
+// dropped either: it is appended to the quarantine file for an operator, then skipped.
+class JournalReplayer {
+    private static final String EXISTS_SQL = "SELECT 1 FROM transactions WHERE receipt = ?";
+    private static final String INSERT_LEDGER_SQL =
+            "INSERT INTO transactions (receipt, occurred_at, from_card, to_card, amount, description) VALUES (?, ?, ?, ?, ?, ?)";
+    // same overdraft guard as TransferEngine: the debit row only applies while balance >= amount
+    private static final String APPLY_DELTA_SQL =
+            "UPDATE accounts SET balance = balance + ?, updated_at = CURRENT_TIMESTAMP WHERE account_number = ? AND balance + ? >= 0";
+    private static final String SET_PIN_SQL = "UPDATE accounts SET pin = ?, updated_at = CURRENT_TIMESTAMP WHERE account_number = ?";
+
+    private final WriteAheadJournal journal;
+    private final long intervalMs;
+    private final Runnable onDrained;
+    private final Path quarantine;
+    private volatile Thread thread;
+    private boolean outageLogged;
+
+    JournalReplayer(WriteAheadJournal journal, long intervalMs, Runnable onDrained, Path quarantine) {
+        this.journal = journal;
+        this.intervalMs = intervalMs;
+        this.onDrained = onDrained;
+        this.quarantine = quarantine;
+    }
+
+    synchronized void start() {
+        if (thread != null) return;
+        thread = new Thread(this::run, "atm-journal-replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        Thread t = thread;
+        if (t != null) t.interrupt();
+    }
+
+    // Replays everything pending; throws when the DB is (still) unavailable.
+    synchronized int drain() throws SQLException, IOException {
+        List<WriteAheadJournal.Record> records = journal.pending();
+        if (records.isEmpty()) return 0;
+        int replayed = 0;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            for (WriteAheadJournal.Record r : records) {
+                String refused;
+                try {
+                    refused = apply(conn, r);
+                    if (refused == null) {
+                        conn.commit();
+                    } else {
+                        conn.rollback();
+                    }
+                } catch (SQLException ex) {
+                    conn.rollback();
+                    if (TransferEngine.isUnavailable(ex)) throw ex;
+                    refused = ex.getSQLState() + " " + ex.getMessage();
+                }
+                if (refused != null) quarantine(r, refused);
+                journal.markReplayed(r.seq);
+                replayed++;
+            }
+        }
+        if (!journal.hasPending()) onDrained.run();
+        return replayed;
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                int replayed = drain();
+                if (replayed > 0) System.out.println("Replayed " + replayed + " journaled operations to the DB.");
+                outageLogged = false;
+            } catch (SQLException | IOException ex) {
+                if (!outageLogged) {
+                    System.err.println("Journal replay waiting for the DB: " + ex.getMessage());
+                    outageLogged = true;
+                }
+            }
+            try {
+                Thread.sleep(intervalMs);
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    // Null when the record is applied (or was already); otherwise why the DB cannot take it.
+    private static String apply(Connection conn, WriteAheadJournal.Record r) throws SQLException {
+        switch (r.type) {
+            case WriteAheadJournal.TRANSFER:
+                try (PreparedStatement exists = conn.prepareStatement(EXISTS_SQL)) {
+                    exists.setString(1, r.receipt);
+                    try (ResultSet rs = exists.executeQuery()) {
+                        // ledger row already present: this transfer was replayed before
+                        if (rs.next()) return null;
+                    }
+                }
+                try (PreparedStatement ledger = conn.prepareStatement(INSERT_LEDGER_SQL);
+                     PreparedStatement balances = conn.prepareStatement(APPLY_DELTA_SQL)) {
+                    ledger.setString(1, r.receipt);
+                    ledger.setTimestamp(2, new Timestamp(r.epochMillis));
+                    ledger.setString(3, r.account);
+                    ledger.setString(4, r.otherAccount);
+                    ledger.setBigDecimal(5, Money.toDecimal(r.cents));
+                    ledger.setString(6, r.text);
+                    ledger.executeUpdate();
+                    // the money already moved at the terminal; the DB just catches up
+                    balances.setBigDecimal(1, Money.toDecimal(-r.cents));
+                    balances.setString(2, r.account);
+                    balances.setBigDecimal(3, Money.toDecimal(-r.cents));
+                    balances.addBatch();
+                    balances.setBigDecimal(1, Money.toDecimal(r.cents));
+                    balances.setString(2, r.otherAccount);
+                    balances.setBigDecimal(3, Money.toDecimal(r.cents));
+                    balances.addBatch();
+                    int[] counts = balances.executeBatch();
+                    if (!TransferEngine.updatedOneRow(counts[0])) return "payer " + r.account + " cannot cover the amount or does not exist";
+                    if (!TransferEngine.updatedOneRow(counts[1])) return "payee " + r.otherAccount + " does not exist";
+                }
+                return null;
+            case WriteAheadJournal.PIN:
+                try (PreparedStatement ps = conn.prepareStatement(SET_PIN_SQL)) {
+                    ps.setString(1, r.text);
+                    ps.setString(2, r.account);
+                    if (ps.executeUpdate() == 0) return "account " + r.account + " does not exist";
+                }
+                return null;
+            default:
+                return "unknown journal record type " + r.type;
+        }
+    }
+
+    // One CSV line per refused record: seq,type,epochMillis,receipt,account,otherAccount,amount,reason.
+    // Forced to disk before the record is marked replayed, so a refused movement is never lost.
+    private void quarantine(WriteAheadJournal.Record r, String reason) throws IOException {
+        System.err.println("Journal record " + r.seq + (r.receipt != null ? " (receipt " + r.receipt + ")" : "")
+                + " refused by the DB, quarantined to " + quarantine + ": " + reason);
+        String line = r.seq + "," + r.type + "," + r.epochMillis + "," + nullToEmpty(r.receipt) + "," + nullToEmpty(r.account) + ","
+                + nullToEmpty(r.otherAccount) + "," + Money.format(r.cents) + ",\"" + reason.replace("\"", "\"\"") + "\"\n";
+        try (BufferedWriter out = Files.newBufferedWriter(quarantine, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE, StandardOpenOption.SYNC)) {
+            out.write(line);
+        }
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+}
@@ -0,0 +1,78 @@
+package atm;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free, allocation-free latency histogram in the spirit of HdrHistogram: values are
+// bucketed log-linearly (32 linear sub-buckets per power of two, so any recorded value
+// is reported within ~3%), which covers 1 ns .. Long.MAX_VALUE in a fixed 15 KB array.
+final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private volatile long max;
+
+    void record(long nanos) {
+        long v = Math.max(0L, nanos);
+        counts.incrementAndGet(indexOf(v));
+        total.increment();
+        sum.add(v);
+        // racy check first so the common case is a plain volatile read
+        if (v > max) raiseMax(v);
+    }
+
+    private synchronized void raiseMax(long v) {
+        if (v > max) max = v;
+    }
+
+    long count() {
+        return total.sum();
+    }
+
+    long max() {
+        return max;
+    }
+
+    double mean() {
+        long n = total.sum();
+        return n == 0 ? 0.0 : (double) sum.sum() / n;
+    }
+
+    // Value at the given quantile (0..1), e.g. 0.99 for p99; 0 when nothing was recorded.
+    long valueAt(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) return 0L;
+        long rank = (long) Math.ceil(quantile * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(1, rank)) return Math.min(max, highestEquivalent(i));
+        }
+        return max;
+    }
+
+    static int indexOf(long v) {
+        if (v < SUB_COUNT) return (int) v;
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int shift = msb - SUB_BITS;
+        int sub = (int) (v >>> shift) & (SUB_COUNT - 1);
+        return (shift + 1) * SUB_COUNT + sub;
+    }
+
+    // Largest value that lands in the bucket.
+    static long highestEquivalent(int index) {
+        if (index < SUB_COUNT) return index;
+        int shift = index / SUB_COUNT - 1;
+        long lower = (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
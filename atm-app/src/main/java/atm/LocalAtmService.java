@@ -0,0 +1,526 @@
+package atm;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// AtmService running in this JVM against DatabaseConnection. Accounts are loaded once
+// in the background by start(); every operation waits for that load before it runs.
+class LocalAtmService implements AtmService {
+    // rough heap cost of one cached Account with its strings, used for atm.cache.maxMegabytes
+    private static final int ESTIMATED_ACCOUNT_BYTES = 512;
+    // how far a snapshot's asOf is set back from MAX(updated_at); longer than any transaction on accounts runs
+    private static final long REFRESH_MARGIN_MS = Long.getLong("atm.snapshot.refreshMarginMs", 60_000L);
+
+    private final AccountLedger ledger = new AccountLedger();
+    private final JdbcAccountLoader loader = new JdbcAccountLoader();
+    private final ExecutorService executor = newExecutor();
+    // set by loadAccountsFromDB(): persistent when accounts came from the DB, in-memory on the fallback accounts
+    private volatile TransferEngine transferEngine = new TransferEngine(ledger, false);
+    // true once the accounts came from the DB; the fallback accounts are never written anywhere
+    private volatile boolean persistent;
+    private volatile CompletableFuture<Void> ready;
+    // optional write-ahead journal for DB outages (see openJournal)
+    private WriteAheadJournal journal;
+    private JournalReplayer replayer;
+    // optional coalescing of balance updates (see BalanceWriteBehind)
+    private volatile BalanceWriteBehind writeBehind;
+    // set when the whole table was loaded from the DB; the asOf of the snapshot written at shutdown
+    private volatile Timestamp snapshotAsOf;
+    // PIN hashing off the service executor, with brute-force lockout
+    private final PinVerifier pinVerifier = new PinVerifier();
+    // daily/hourly/velocity limits per payer, rebuilt from the ledger at startup
+    private final TransferLimits limits = TransferLimits.fromProperties();
+
+    // Kicks off the account load; safe to call more than once.
+    synchronized LocalAtmService start() {
+        if (ready == null) {
+            Metrics.publish();
+            ready = CompletableFuture.runAsync(this::loadAccountsFromDB, executor);
+        }
+        return this;
+    }
+
+    AccountLedger ledger() {
+        return ledger;
+    }
+
+    // False when the DB could not be read and the service runs on the in-memory fallback
+    // accounts; waits for the account load.
+    boolean persistent() {
+        start().ready.join();
+        return persistent;
+    }
+
+    // For batch jobs beside the service (BulkTransferImport); waits for the account load.
+    TransferEngine transferEngine() {
+        start().ready.join();
+        return transferEngine;
+    }
+
+    // A locked-out account fails with PinVerifier.LockedOutException before any hashing.
+    // Failures count against the account number whether its card or its number was typed,
+    // so both share one budget; ids that match no account count against what was typed.
+    @Override
+    public CompletableFuture<Account> login(String cardOrAccount, String pin) {
+        long start = System.nanoTime();
+        // an id probed without matching any account is refused before it costs a lookup
+        if (pinVerifier.isLocked(cardOrAccount)) {
+            return Metrics.timed(Metrics.Operation.LOGIN, start, CompletableFuture.failedFuture(new PinVerifier.LockedOutException()));
+        }
+        CompletableFuture<Account> result = submitUntimed(() -> ledger.findByCardOrAccount(cardOrAccount)).thenCompose(account -> {
+            if (account == null) {
+                pinVerifier.recordFailure(cardOrAccount);
+                return CompletableFuture.completedFuture(null);
+            }
+            String stored = account.pin;
+            return pinVerifier.verify(account.accountNumber, stored, pin).thenApply(ok -> {
+                if (!ok) return null;
+                if (PinHasher.needsRehash(stored)) upgradePin(account, stored, pin);
+                return account;
+            });
+        });
+        return Metrics.timed(Metrics.Operation.LOGIN, start, result);
+    }
+
+    @Override
+    public CompletableFuture<Account> findAccount(String cardOrAccount) {
+        // direct lookup by account number first, then by card number
+        return submit(Metrics.Operation.ACCOUNT_LOOKUP, () -> {
+            Account account = ledger.get(cardOrAccount);
+            return account != null ? account : ledger.getByCard(cardOrAccount);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> verifyPin(String accountNumber, String pin) {
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> result = submitUntimed(() -> ledger.get(accountNumber)).thenCompose(account ->
+                account == null ? CompletableFuture.completedFuture(false) : pinVerifier.verify(accountNumber, account.pin, pin));
+        return Metrics.timed(Metrics.Operation.PIN_VERIFY, start, result);
+    }
+
+    @Override
+    public CompletableFuture<Long> balance(String accountNumber) {
+        return submit(Metrics.Operation.BALANCE, () -> requireAccount(accountNumber).balanceCents);
+    }
+
+    @Override
+    public CompletableFuture<TransferResult> transfer(String fromAccount, String toAccount, long cents) {
+        return submit(Metrics.Operation.TRANSFER, () -> {
+            Account from = requireAccount(fromAccount);
+            if (cents <= 0) return new TransferResult(TransferStatus.INVALID_AMOUNT, null, from.balanceCents, "Invalid amount.");
+            if (from.accountNumber.equals(toAccount)) {
+                return new TransferResult(TransferStatus.SAME_ACCOUNT, null, from.balanceCents, "Cannot transfer to the same account.");
+            }
+            Account to = ledger.get(toAccount);
+            if (to == null) return new TransferResult(TransferStatus.RECIPIENT_NOT_FOUND, null, from.balanceCents, "Recipient account not found.");
+            long now = System.currentTimeMillis();
+            String overLimit = limits.reserve(from.accountNumber, cents, now);
+            if (overLimit != null) return new TransferResult(TransferStatus.LIMIT_EXCEEDED, null, from.balanceCents, overLimit);
+            long receiptId = ReceiptCodes.next();
+            String receipt = ReceiptCodes.format(receiptId);
+            boolean transferred = false;
+            try {
+                transferred = transferEngine.transfer(from, to, cents, receipt, "Transfer");
+            } catch (SQLException ex) {
+                System.err.println("Failed to record transfer " + receipt + ": " + ex.getMessage());
+                return new TransferResult(TransferStatus.FAILED, receipt, from.balanceCents, "Transfer could not be completed. No money was moved.");
+            } finally {
+                // however the engine gave up (a RuntimeException too), the amount stops counting
+                if (!transferred) limits.release(from.accountNumber, cents, now);
+            }
+            if (!transferred) return new TransferResult(TransferStatus.INSUFFICIENT_FUNDS, null, from.balanceCents, "Insufficient funds.");
+            from.addTransaction(receiptId, now, to.accountNumber, cents, RecentTransactions.TRANSFER_OUT);
+            to.addTransaction(receiptId, now, from.accountNumber, cents, RecentTransactions.TRANSFER_IN);
+            return new TransferResult(TransferStatus.COMPLETED, receipt, from.balanceCents, null);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> changePin(String accountNumber, String newPin) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> result = submitUntimed(() -> requireAccount(accountNumber)).thenCompose(account ->
+                pinVerifier.hash(newPin).thenAcceptAsync(hashed -> setPin(account, null, hashed), executor));
+        return Metrics.timed(Metrics.Operation.PIN_CHANGE, start, result);
+    }
+
+    // Replaces a legacy or weaker stored PIN after a successful login; best effort, retried at the next one.
+    private void upgradePin(Account account, String stored, String pin) {
+        pinVerifier.hash(pin).thenAcceptAsync(hashed -> setPin(account, stored, hashed), executor);
+    }
+
+    // Under the account lock, so a PIN change and an upgrade cannot reach memory and the DB in
+    // different orders. With `expected` set, only replaces that exact stored value.
+    private void setPin(Account account, String expected, String hashed) {
+        ReentrantLock lock = ledger.lockFor(account.accountNumber);
+        lock.lock();
+        try {
+            if (expected != null && account.pin != expected) return;
+            account.pin = hashed;
+            // update in DB
+            updateAccountPin(account);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<TransactionRecord>> history(String accountNumber, TransactionRecord after, int limit) {
+        return submit(Metrics.Operation.HISTORY, () -> TransactionHistoryQuery.fetch(accountNumber, after, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<TransactionRecord>> recentActivity(String accountNumber) {
+        return submit(Metrics.Operation.HISTORY, () -> requireAccount(accountNumber).recentTransactions.toRecords(accountNumber));
+    }
+
+    @Override
+    public void shutdown() {
+        System.out.println("Account " + ledger.cacheStats());
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        pinVerifier.shutdown();
+        if (writeBehind != null) writeBehind.close();
+        if (replayer != null) replayer.stop();
+        saveSnapshot();
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                System.err.println("Failed to close journal: " + ex.getMessage());
+            }
+        }
+        DatabaseConnection.shutdown();
+        Metrics.stopEndpoint();
+    }
+
+    // Latency is measured from the call, so time spent waiting for startup or a free worker counts too.
+    private <T> CompletableFuture<T> submit(Metrics.Operation op, CheckedSupplier<T> work) {
+        start();
+        long startNanos = System.nanoTime();
+        return ready.thenApplyAsync(ignored -> timed(op, startNanos, work), executor);
+    }
+
+    private <T> CompletableFuture<T> submitUntimed(CheckedSupplier<T> work) {
+        start();
+        return ready.thenApplyAsync(ignored -> unchecked(work), executor);
+    }
+
+    static <T> T timed(Metrics.Operation op, long startNanos, CheckedSupplier<T> work) {
+        boolean failed = true;
+        try {
+            T result = unchecked(work);
+            // a transfer that could not be recorded is reported as a result, not thrown
+            failed = result instanceof TransferResult && ((TransferResult) result).status == TransferStatus.FAILED;
+            return result;
+        } finally {
+            Metrics.record(op, startNanos, failed);
+        }
+    }
+
+    static <T> T unchecked(CheckedSupplier<T> work) {
+        try {
+            return work.get();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    private Account requireAccount(String accountNumber) {
+        Account account = ledger.get(accountNumber);
+        if (account == null) throw new IllegalArgumentException("Unknown account " + accountNumber);
+        return account;
+    }
+
+    // Cache configuration (system properties):
+    //   atm.cache.maxAccounts   resident accounts before eviction starts (default 100000, 0 = load the whole table at startup)
+    //   atm.cache.maxMegabytes  optional heap budget, converted to an account count with ESTIMATED_ACCOUNT_BYTES
+    //   atm.cache.policy        LRU or LFU (default LRU)
+    //   atm.cache.prewarm       comma-separated account numbers to load at startup
+    //   atm.snapshot.path       with maxAccounts=0: binary account snapshot read at startup, rewritten on shutdown
+    //   atm.snapshot.refreshMarginMs  how far before the newest updated_at the next refresh starts (default 60000)
+    private void loadAccountsFromDB() {
+        int maxAccounts = Integer.getInteger("atm.cache.maxAccounts", 100_000);
+        long maxMegabytes = Long.getLong("atm.cache.maxMegabytes", 0L);
+        if (maxMegabytes > 0) {
+            int byMemory = (int) Math.min(Integer.MAX_VALUE, maxMegabytes * 1024 * 1024 / ESTIMATED_ACCOUNT_BYTES);
+            maxAccounts = maxAccounts > 0 ? Math.min(maxAccounts, byMemory) : byMemory;
+        }
+        AccountLedger.EvictionPolicy policy = AccountLedger.EvictionPolicy.valueOf(System.getProperty("atm.cache.policy", "LRU").toUpperCase());
+        openJournal();
+        try {
+            // crash recovery: whatever the journal still holds goes to the DB before anything is read from it
+            if (replayer != null) replayer.drain();
+            // the previous run may have stopped between a ledger insert and its balance flush; checked
+            // even with write-behind off now, since that run may have had it on
+            int recovered = BalanceWriteBehind.recover();
+            if (recovered > 0) System.out.println("Applied balance updates of " + recovered + " transfers left pending by the last run.");
+            int loaded;
+            if (maxAccounts <= 0) {
+                loaded = loadFullTable();
+            } else {
+                loaded = loader.loadEach(prewarmList(), ledger::register);
+            }
+            ledger.configureCache(loader, maxAccounts, policy);
+            writeBehind = openWriteBehind();
+            transferEngine = new TransferEngine(ledger, true, journal, writeBehind);
+            persistent = true;
+            rebuildLimits();
+            System.out.println("Loaded " + loaded + " accounts from DB" + (maxAccounts > 0 ? " (others load on demand, " + ledger.cacheStats() + ")." : "."));
+        } catch (SQLException | IOException ex) {
+            System.err.println("Failed to load accounts from DB. Using in-memory defaults. Error: " + ex.getMessage());
+            // fallback accounts (same as before)
+            // fallback: supply a cardNo different from the account number
+            ledger.register(new Account("1234567890", "CARD-0001", "1234", 1000_00L, "John Doe", "IFSC1234567", "123 Main St, Anytown"));
+            ledger.register(new Account("1111222233", "CARD-0002", "4321", 500_00L, "Jane Smith", "IFSC7654321", "456 Oak Ave, Somewhere"));
+            System.out.println("Loaded fallback in-memory accounts: 2 entries.");
+            if (journal != null) {
+                // the DB has not seen these yet; replay them onto the in-memory accounts
+                List<WriteAheadJournal.Record> pending = journal.pending();
+                for (WriteAheadJournal.Record r : pending) applyToMemory(r);
+                if (!pending.isEmpty()) System.out.println("Re-applied " + pending.size() + " journaled operations awaiting replay.");
+            }
+            transferEngine = new TransferEngine(ledger, false);
+        }
+        if (replayer != null) replayer.start();
+    }
+
+    // After the journal drain and write-behind recovery, so the ledger holds every transfer.
+    // Not fatal: without it limits only count transfers made from now on.
+    private void rebuildLimits() {
+        try {
+            int recent = limits.rebuild();
+            if (recent > 0) System.out.println("Counted " + recent + " transfers of the last day against transfer limits.");
+        } catch (SQLException ex) {
+            System.err.println("Failed to load recent transfers; limits start empty. Error: " + ex.getMessage());
+        }
+    }
+
+    // Journal configuration (system properties); the journal is off unless a path is given:
+    //   atm.journal.path              journal file
+    //   atm.journal.sizeMb            size of the mapped file (default 64)
+    //   atm.journal.fsync             ALWAYS, GROUP or NONE (default GROUP)
+    //   atm.journal.groupCommitMs     interval between forced flushes (default 2)
+    //   atm.journal.replayIntervalMs  how often the replayer retries the DB (default 1000)
+    // Records the DB refuses during replay are appended to <path>.quarantine.
+    private void openJournal() {
+        String path = System.getProperty("atm.journal.path");
+        if (path == null || path.isEmpty()) return;
+        try {
+            journal = WriteAheadJournal.open(Paths.get(path),
+                    Integer.getInteger("atm.journal.sizeMb", 64) * 1024 * 1024,
+                    WriteAheadJournal.FsyncPolicy.valueOf(System.getProperty("atm.journal.fsync", "GROUP").toUpperCase()),
+                    Long.getLong("atm.journal.groupCommitMs", 2L));
+            replayer = new JournalReplayer(journal, Long.getLong("atm.journal.replayIntervalMs", 1000L), this::onJournalDrained,
+                    Paths.get(path + ".quarantine"));
+            System.out.println("Opened journal " + path + " (" + journal.pending().size() + " operations awaiting replay).");
+        } catch (IOException ex) {
+            System.err.println("Failed to open journal " + path + "; DB outages will fail writes. Error: " + ex.getMessage());
+        }
+    }
+
+    // Write-behind configuration (system properties); off unless a window is given:
+    //   atm.writeBehind.windowMs    how long balance updates are coalesced before a flush
+    //   atm.writeBehind.maxPending  transfers awaiting a flush before new ones wait (default 10000)
+    private BalanceWriteBehind openWriteBehind() {
+        long windowMs = writeBehindWindowMs();
+        if (windowMs <= 0) return null;
+        return new BalanceWriteBehind(windowMs, Integer.getInteger("atm.writeBehind.maxPending", 10_000));
+    }
+
+    private static long writeBehindWindowMs() {
+        return Long.getLong("atm.writeBehind.windowMs", 0L);
+    }
+
+    private void applyToMemory(WriteAheadJournal.Record r) {
+        Account account = ledger.get(r.account);
+        switch (r.type) {
+            case WriteAheadJournal.TRANSFER:
+                if (!BulkTransferImport.DESCRIPTION.equals(r.text)) limits.record(r.account, r.cents, r.epochMillis);
+                Account other = ledger.get(r.otherAccount);
+                if (account != null) {
+                    account.balanceCents -= r.cents;
+                    account.dirty = true;
+                }
+                if (other != null) {
+                    other.balanceCents += r.cents;
+                    other.dirty = true;
+                }
+                break;
+            case WriteAheadJournal.PIN:
+                if (account != null) {
+                    account.pin = r.text;
+                    account.dirty = true;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Everything journaled is in the DB now; resident copies may be evicted again.
+    private void onJournalDrained() {
+        for (Account account : ledger.all()) {
+            if (!account.dirty) continue;
+            // journal appends happen under the account lock, so holding it makes the check exact
+            ReentrantLock lock = ledger.lockFor(account.accountNumber);
+            lock.lock();
+            try {
+                if (!journal.hasPending()) account.dirty = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Starts from the snapshot when there is a valid one and applies only the rows changed
+    // since it was taken; otherwise (or if rows were deleted meanwhile) reads the whole table.
+    private int loadFullTable() throws SQLException {
+        long start = System.nanoTime();
+        // taken before reading anything, so whatever changes from here on is in the next delta.
+        // updated_at is stamped when a row is written, not when it commits: a transaction still
+        // open now can commit a row older than MAX(updated_at), so the next delta starts earlier.
+        Timestamp newest = loader.lastUpdated();
+        Timestamp asOf = new Timestamp(newest == null ? 0L : Math.max(0L, newest.getTime() - REFRESH_MARGIN_MS));
+        Path path = snapshotPath();
+        if (path != null && Files.exists(path)) {
+            try {
+                AccountSnapshot snapshot = AccountSnapshot.read(path);
+                snapshot.accounts.parallelStream().forEach(ledger::register);
+                int changed = loader.loadChangedSince(snapshot.asOf, ledger::register);
+                // a row count alone misses an insert and a delete in between; every row must be resident
+                int[] missing = {0};
+                int expected = loader.forEachAccountNumber(accountNumber -> {
+                    if (ledger.get(accountNumber) == null) missing[0]++;
+                });
+                if (missing[0] == 0 && ledger.size() == expected) {
+                    snapshotAsOf = asOf;
+                    System.out.println("Loaded " + snapshot.accounts.size() + " accounts from snapshot " + path + " and " + changed
+                            + " changed since in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+                    return ledger.size();
+                }
+                System.err.println("Account snapshot " + path + " is out of step with the DB (" + ledger.size() + " vs "
+                        + expected + " accounts, " + missing[0] + " not in the snapshot); reading the whole table.");
+            } catch (IOException ex) {
+                System.err.println("Ignoring account snapshot " + path + ": " + ex.getMessage());
+            }
+            ledger.clear();
+        }
+        int loaded = loader.loadAll(ledger::register);
+        snapshotAsOf = asOf;
+        System.out.println("Read " + loaded + " accounts from the DB in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        return loaded;
+    }
+
+    // Only a copy that matches the DB is worth saving: skip it while anything is still waiting to be written.
+    private void saveSnapshot() {
+        Path path = snapshotPath();
+        if (path == null || snapshotAsOf == null) return;
+        if (journal != null && journal.hasPending()) {
+            System.err.println("Not writing account snapshot: journaled operations have not reached the DB yet.");
+            return;
+        }
+        for (Account account : ledger.all()) {
+            if (account.unsaved()) {
+                System.err.println("Not writing account snapshot: account " + account.accountNumber + " has unsaved changes.");
+                return;
+            }
+        }
+        try {
+            AccountSnapshot.write(path, ledger.all(), snapshotAsOf);
+            System.out.println("Wrote account snapshot " + path + " (" + ledger.size() + " accounts).");
+        } catch (IOException ex) {
+            System.err.println("Failed to write account snapshot " + path + ": " + ex.getMessage());
+        }
+    }
+
+    private static Path snapshotPath() {
+        String path = System.getProperty("atm.snapshot.path");
+        return path == null || path.isEmpty() ? null : Paths.get(path);
+    }
+
+    private static List<String> prewarmList() {
+        List<String> accountNumbers = new ArrayList<>();
+        for (String s : System.getProperty("atm.cache.prewarm", "").split(",")) {
+            if (!s.trim().isEmpty()) accountNumbers.add(s.trim());
+        }
+        return accountNumbers;
+    }
+
+    private void updateAccountPin(Account account) {
+        // fallback accounts stay in memory; journaling them would replay them onto the real DB
+        if (!persistent) return;
+        if (journalIfPending(account, () -> journal.appendPin(account.accountNumber, account.pin))) return;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement("UPDATE accounts SET pin = ?, updated_at = CURRENT_TIMESTAMP WHERE account_number = ?")) {
+            ps.setString(1, account.pin);
+            ps.setString(2, account.accountNumber);
+            ps.executeUpdate();
+        } catch (SQLException ex) {
+            if (journalAfterFailure(account, ex, () -> journal.appendPin(account.accountNumber, account.pin))) return;
+            // keep the new PIN resident until it reaches the DB
+            account.dirty = true;
+            System.err.println("Failed to update PIN for " + account.accountNumber + ": " + ex.getMessage());
+        }
+    }
+
+    // While journaled work is waiting for replay, later writes must queue behind it.
+    private boolean journalIfPending(Account account, JournalAppend append) {
+        if (journal == null || !journal.hasPending()) return false;
+        return journalAfterFailure(account, null, append);
+    }
+
+    private boolean journalAfterFailure(Account account, SQLException cause, JournalAppend append) {
+        if (journal == null) return false;
+        try {
+            append.run();
+            account.dirty = true;
+            if (cause != null) System.err.println("DB unavailable, journaled write for " + account.accountNumber + ": " + cause.getMessage());
+            return true;
+        } catch (IOException ex) {
+            System.err.println("Failed to journal write for " + account.accountNumber + ": " + ex.getMessage());
+            return false;
+        }
+    }
+
+    interface JournalAppend {
+        void run() throws IOException;
+    }
+
+    // Virtual threads when the runtime has them (JDK 21+), otherwise a fixed pool of daemon threads
+    // sized by atm.service.threads. Blocking JDBC calls are fine on either.
+    static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            int threads = Integer.getInteger("atm.service.threads", Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+            AtomicInteger n = new AtomicInteger();
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "atm-service-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    interface CheckedSupplier<T> {
+        T get() throws Exception;
+    }
+}
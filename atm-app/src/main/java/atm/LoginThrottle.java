@@ -0,0 +1,80 @@
+package atm;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Failed-attempt counters that fade with time, keyed by account number (or by the typed
+// id when it matches no account): each failure adds one, and the score halves every
+// halfLife. A key is refused while its score is at or above maxFailures, before any PIN
+// hashing is spent on it.
+//
+// Memory is fixed no matter how many distinct keys an attacker tries: scores live in a
+// table of slots, each key maps to two of them, gets counted in both and reads the
+// smaller (a count-min sketch), so an unrelated key is only held back if both of its
+// slots are hot. A slot packs [32 bits of time in seconds][32 bits of score * SCALE]
+// and is updated with a CAS; no locks are taken.
+final class LoginThrottle {
+    private static final long SCALE = 1_000;
+    private static final long SCORE_MASK = 0xFFFF_FFFFL;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final double maxFailures;
+    private final double halfLifeSeconds;
+    private final long startNanos = System.nanoTime();
+
+    LoginThrottle(int minSlots, int maxFailures, double halfLifeSeconds) {
+        int n = Integer.highestOneBit(Math.max(2, minSlots - 1)) << 1;
+        this.slots = new AtomicLongArray(n);
+        this.mask = n - 1;
+        this.maxFailures = maxFailures;
+        this.halfLifeSeconds = halfLifeSeconds;
+    }
+
+    boolean isLocked(String key) {
+        if (key == null) return false;
+        long now = nowSeconds();
+        int h = hash(key);
+        double score = Math.min(score(slots.get(h & mask), now), score(slots.get(rehash(h) & mask), now));
+        return score >= maxFailures;
+    }
+
+    void recordFailure(String key) {
+        if (key == null) return;
+        long now = nowSeconds();
+        int h = hash(key);
+        add(h & mask, now);
+        add(rehash(h) & mask, now);
+    }
+
+    private void add(int slot, long now) {
+        long prev;
+        long next;
+        do {
+            prev = slots.get(slot);
+            long score = Math.min(SCORE_MASK, (long) (score(prev, now) * SCALE) + SCALE);
+            next = now << 32 | score;
+        } while (!slots.compareAndSet(slot, prev, next));
+    }
+
+    private double score(long packed, long now) {
+        long score = packed & SCORE_MASK;
+        if (score == 0) return 0.0;
+        long age = now - (packed >>> 32);
+        return score / (double) SCALE * Math.pow(0.5, age / halfLifeSeconds);
+    }
+
+    private long nowSeconds() {
+        return (System.nanoTime() - startNanos) / 1_000_000_000L;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // second, independent-enough slot for the same key
+    private static int rehash(int h) {
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13) ^ 0x5BD1E995;
+    }
+}
@@ -0,0 +1,208 @@
+package atm;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+// Per-operation latency histograms plus call and error counters for every ATM operation
+// and every JDBC round trip. record() is a couple of atomic adds into preallocated
+// arrays, with no locks and no allocation; timed() adds one completion stage per call.
+//
+// Exposed as JMX MBeans (atm:type=Operation,name=<op>) and, when atm.metrics.port is
+// set, as plain text in the Prometheus exposition format on http://127.0.0.1:<port>/metrics.
+final class Metrics {
+    enum Operation {
+        LOGIN("login"),
+        ACCOUNT_LOOKUP("account_lookup"),
+        PIN_VERIFY("pin_verify"),
+        BALANCE("balance"),
+        TRANSFER("transfer"),
+        PIN_CHANGE("pin_change"),
+        HISTORY("history"),
+        TRANSFER_BATCH("transfer_batch"),
+        JDBC_CONNECT("jdbc_connect"),
+        JDBC_EXECUTE("jdbc_execute");
+
+        final String metricName;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        Operation(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private static final long STARTED_NANOS = System.nanoTime();
+    private static boolean published;
+    private static HttpServer server;
+
+    private Metrics() {
+    }
+
+    // Typical use: long t0 = System.nanoTime(); ...; Metrics.record(op, t0, failed);
+    static void record(Operation op, long startNanos, boolean error) {
+        op.latency.record(System.nanoTime() - startNanos);
+        if (error) op.errors.increment();
+    }
+
+    // For operations that finish on another pool: records when the future completes.
+    // Allocates the whenComplete stage it returns, so synchronous paths use record().
+    static <T> CompletableFuture<T> timed(Operation op, long startNanos, CompletableFuture<T> future) {
+        return future.whenComplete((ignored, error) -> record(op, startNanos, error != null));
+    }
+
+    // Registers the MBeans and, if atm.metrics.port is set, starts the scrape endpoint. Idempotent.
+    static synchronized void publish() {
+        if (published) return;
+        published = true;
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        for (Operation op : Operation.values()) {
+            try {
+                mbs.registerMBean(new StandardMBean(new OperationMetrics(op), OperationMetricsMBean.class),
+                        new ObjectName("atm:type=Operation,name=" + op.metricName));
+            } catch (JMException ex) {
+                System.err.println("Failed to register metrics MBean for " + op.metricName + ": " + ex.getMessage());
+            }
+        }
+        Integer port = Integer.getInteger("atm.metrics.port");
+        if (port != null) {
+            try {
+                server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+                server.createContext("/metrics", exchange -> {
+                    byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                });
+                server.start();
+                System.out.println("Metrics available on http://127.0.0.1:" + server.getAddress().getPort() + "/metrics");
+            } catch (IOException ex) {
+                System.err.println("Failed to start metrics endpoint on port " + port + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    static synchronized void stopEndpoint() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    // Prometheus text format: a summary per operation (quantiles in seconds) plus error counters.
+    static String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("# HELP atm_operation_seconds Latency of ATM operations and JDBC calls.\n");
+        sb.append("# TYPE atm_operation_seconds summary\n");
+        for (Operation op : Operation.values()) {
+            LatencyHistogram h = op.latency;
+            long count = h.count();
+            quantile(sb, op, "0.5", h.valueAt(0.5));
+            quantile(sb, op, "0.99", h.valueAt(0.99));
+            quantile(sb, op, "0.999", h.valueAt(0.999));
+            sb.append("atm_operation_seconds_sum{op=\"").append(op.metricName).append("\"} ").append(h.mean() * count / 1e9).append('\n');
+            sb.append("atm_operation_seconds_count{op=\"").append(op.metricName).append("\"} ").append(count).append('\n');
+        }
+        sb.append("# HELP atm_operation_max_seconds Slowest call seen since start.\n");
+        sb.append("# TYPE atm_operation_max_seconds gauge\n");
+        for (Operation op : Operation.values()) {
+            sb.append("atm_operation_max_seconds{op=\"").append(op.metricName).append("\"} ").append(op.latency.max() / 1e9).append('\n');
+        }
+        sb.append("# HELP atm_operation_errors_total Calls that ended in an error.\n");
+        sb.append("# TYPE atm_operation_errors_total counter\n");
+        for (Operation op : Operation.values()) {
+            sb.append("atm_operation_errors_total{op=\"").append(op.metricName).append("\"} ").append(op.errors.sum()).append('\n');
+        }
+        DatabaseConnection.Stats pool = DatabaseConnection.stats();
+        sb.append("# TYPE atm_db_pool_active gauge\natm_db_pool_active ").append(pool.active).append('\n');
+        sb.append("# TYPE atm_db_pool_idle gauge\natm_db_pool_idle ").append(pool.idle).append('\n');
+        sb.append("# TYPE atm_db_pool_wait_seconds_total counter\natm_db_pool_wait_seconds_total ").append(pool.totalWaitNanos / 1e9).append('\n');
+        sb.append("# TYPE atm_uptime_seconds gauge\natm_uptime_seconds ").append((System.nanoTime() - STARTED_NANOS) / 1e9).append('\n');
+        return sb.toString();
+    }
+
+    private static void quantile(StringBuilder sb, Operation op, String q, long nanos) {
+        sb.append("atm_operation_seconds{op=\"").append(op.metricName).append("\",quantile=\"").append(q).append("\"} ")
+                .append(nanos / 1e9).append('\n');
+    }
+
+    public interface OperationMetricsMBean {
+        long getCount();
+
+        long getErrors();
+
+        double getThroughputPerSecond();
+
+        double getMeanMicros();
+
+        double getP50Micros();
+
+        double getP99Micros();
+
+        double getP999Micros();
+
+        double getMaxMicros();
+    }
+
+    static final class OperationMetrics implements OperationMetricsMBean {
+        private final Operation op;
+
+        OperationMetrics(Operation op) {
+            this.op = op;
+        }
+
+        @Override
+        public long getCount() {
+            return op.latency.count();
+        }
+
+        @Override
+        public long getErrors() {
+            return op.errors.sum();
+        }
+
+        // average since start; scrape the counter for windowed rates
+        @Override
+        public double getThroughputPerSecond() {
+            double seconds = (System.nanoTime() - STARTED_NANOS) / 1e9;
+            return seconds <= 0 ? 0.0 : op.latency.count() / seconds;
+        }
+
+        @Override
+        public double getMeanMicros() {
+            return op.latency.mean() / 1e3;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return op.latency.valueAt(0.5) / 1e3;
+        }
+
+        @Override
+        public double getP99Micros() {
+            return op.latency.valueAt(0.99) / 1e3;
+        }
+
+        @Override
+        public double getP999Micros() {
+            return op.latency.valueAt(0.999) / 1e3;
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return op.latency.max() / 1e3;
+        }
+    }
+}
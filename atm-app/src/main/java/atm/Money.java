@@ -0,0 +1,33 @@
+package atm;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Conversions between the long-cents amounts used in memory and the decimal
+// amounts typed by users and stored in the DB.
+final class Money {
+    private Money() {
+    }
+
+    // Parses user input such as "25" or "25.50". Throws NumberFormatException for
+    // anything that is not a plain amount with at most two decimals.
+    static long parseCents(String input) {
+        try {
+            return new BigDecimal(input.trim()).setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException ex) {
+            throw new NumberFormatException("Not a valid amount: " + input);
+        }
+    }
+
+    static long fromDecimal(BigDecimal amount) {
+        return amount == null ? 0L : amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    static String format(long cents) {
+        return toDecimal(cents).toPlainString();
+    }
+}
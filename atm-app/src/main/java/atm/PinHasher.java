@@ -0,0 +1,65 @@
+package atm;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// Salted PBKDF2-HMAC-SHA256 PIN hashes, stored in accounts.pin as
+//   pbkdf2-sha256$<iterations>$<salt>$<hash>   (unpadded base64; about 90 characters)
+// Anything without that prefix is a legacy plaintext PIN: it still verifies (in constant
+// time) and is replaced by a hash after the next successful login. The cost of new hashes
+// is atm.pin.iterations (default 100000); stored hashes keep the cost they were made with
+// and are upgraded the same way when it is raised.
+final class PinHasher {
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    static final int ITERATIONS = Integer.getInteger("atm.pin.iterations", 100_000);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Base64.Encoder B64 = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder B64_DECODER = Base64.getDecoder();
+
+    private PinHasher() {
+    }
+
+    static String hash(String pin) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return PREFIX + ITERATIONS + "$" + B64.encodeToString(salt) + "$" + B64.encodeToString(derive(pin, salt, ITERATIONS));
+    }
+
+    // Expensive for hashed PINs by design; run it on PinVerifier's pool.
+    static boolean matches(String stored, String pin) {
+        if (stored == null || pin == null) return false;
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8), pin.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) return false;
+        byte[] expected = B64_DECODER.decode(parts[2]);
+        return MessageDigest.isEqual(expected, derive(pin, B64_DECODER.decode(parts[1]), Integer.parseInt(parts[0])));
+    }
+
+    // Legacy plaintext, or hashed with fewer iterations than currently configured.
+    static boolean needsRehash(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) return true;
+        int end = stored.indexOf('$', PREFIX.length());
+        return end < 0 || Integer.parseInt(stored.substring(PREFIX.length(), end)) < ITERATIONS;
+    }
+
+    private static byte[] derive(String pin, byte[] salt, int iterations) {
+        KeySpec spec = new PBEKeySpec(pin.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ALGORITHM + " is not available", ex);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package atm;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Runs the deliberately slow PIN hashing on its own small pool, so a burst of logins can
+// neither starve the service's other work nor queue up without bound: when the queue is
+// full the attempt fails at once ("busy") instead of waiting. Keys the LoginThrottle has
+// locked out are refused before they reach the pool. Callers key by account number once
+// the account is known, so a card and its account number share one budget.
+//
+// Configuration (system properties):
+//   atm.pin.verifyThreads      hashing threads (default: number of cores)
+//   atm.pin.verifyQueue        attempts allowed to wait for a thread (default 256)
+//   atm.pin.maxFailures        failed attempts before an account is locked out (default 5)
+//   atm.pin.lockoutHalfLifeSec how fast failures are forgiven (default 300)
+//   atm.pin.throttleSlots      size of the failure table (default 65536)
+final class PinVerifier {
+    static final class LockedOutException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+        // also what a remote terminal sees, as the switch forwards error messages verbatim
+        static final String MESSAGE = "Too many failed PIN attempts; try again later.";
+
+        LockedOutException() {
+            super(MESSAGE);
+        }
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final LoginThrottle throttle;
+
+    PinVerifier() {
+        int threads = Integer.getInteger("atm.pin.verifyThreads", Runtime.getRuntime().availableProcessors());
+        AtomicInteger n = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Integer.getInteger("atm.pin.verifyQueue", 256)), r -> {
+                    Thread t = new Thread(r, "atm-pin-verify-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        throttle = new LoginThrottle(Integer.getInteger("atm.pin.throttleSlots", 1 << 16),
+                Integer.getInteger("atm.pin.maxFailures", 5), Integer.getInteger("atm.pin.lockoutHalfLifeSec", 300));
+    }
+
+    // Completes with whether `pin` matches `stored`; failures count against `key`.
+    CompletableFuture<Boolean> verify(String key, String stored, String pin) {
+        if (throttle.isLocked(key)) return CompletableFuture.failedFuture(new LockedOutException());
+        return run(() -> PinHasher.matches(stored, pin)).thenApply(ok -> {
+            if (!ok) throttle.recordFailure(key);
+            return ok;
+        });
+    }
+
+    // Counts a failed attempt for a key that did not get as far as hashing (e.g. unknown card).
+    void recordFailure(String key) {
+        throttle.recordFailure(key);
+    }
+
+    boolean isLocked(String key) {
+        return throttle.isLocked(key);
+    }
+
+    CompletableFuture<String> hash(String pin) {
+        return run(() -> PinHasher.hash(pin));
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private <T> CompletableFuture<T> run(Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(work, pool);
+        } catch (RejectedExecutionException ex) {
+            return CompletableFuture.failedFuture(new IllegalStateException("PIN verification is busy; try again.", ex));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package atm;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Receipts are handled as longs in memory and shown/stored as short text codes.
+//
+// The default generator is Snowflake-style: 41 bits of milliseconds since EPOCH_MILLIS,
+// 10 bits of terminal node id (atm.node.id, 0..1023; give every terminal sharing a
+// database its own) and a 12-bit sequence within the millisecond. Ids are unique per
+// node, increase over time, and their 13-character Crockford base32 codes sort the same
+// way. History is paged by the ledger's seq, not by receipt, so ordering is a nicety
+// for people reading receipts rather than something paging relies on.
+//
+// atm.receipt.generator=random switches to 63 random bits (unique with high probability,
+// not ordered); use() installs any other Generator.
+final class ReceiptCodes {
+    interface Generator {
+        // non-negative and unique across every terminal writing to the same ledger
+        long next();
+    }
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final int MAX_NODE = (1 << NODE_BITS) - 1;
+    // 2024-01-01T00:00:00Z; 41 bits of milliseconds from here last until 2093
+    static final long EPOCH_MILLIS = 1_704_067_200_000L;
+
+    private static final char[] CROCKFORD = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int CODE_LENGTH = 13; // ceil(64 / 5)
+
+    private static volatile Generator generator = fromProperties();
+
+    private ReceiptCodes() {
+    }
+
+    static long next() {
+        return generator.next();
+    }
+
+    static void use(Generator g) {
+        generator = g;
+    }
+
+    // Fixed-width Crockford base32, most significant digit first, so codes compare like the ids.
+    static String format(long receiptId) {
+        char[] code = new char[CODE_LENGTH];
+        long v = receiptId;
+        for (int i = CODE_LENGTH - 1; i >= 0; i--) {
+            code[i] = CROCKFORD[(int) (v & 31)];
+            v >>>= 5;
+        }
+        return new String(code);
+    }
+
+    private static Generator fromProperties() {
+        if ("random".equalsIgnoreCase(System.getProperty("atm.receipt.generator"))) {
+            return () -> ThreadLocalRandom.current().nextLong() >>> 1;
+        }
+        int node = Integer.getInteger("atm.node.id", 0);
+        if (node < 0 || node > MAX_NODE) {
+            System.err.println("atm.node.id must be between 0 and " + MAX_NODE + "; using " + (node & MAX_NODE) + ".");
+            node &= MAX_NODE;
+        }
+        return new Snowflake(node);
+    }
+
+    static final class Snowflake implements Generator {
+        private final long nodeBits;
+        // (milliseconds since EPOCH_MILLIS << SEQUENCE_BITS) | sequence of the last id handed out
+        private final AtomicLong last = new AtomicLong();
+
+        Snowflake(int node) {
+            this.nodeBits = (long) node << SEQUENCE_BITS;
+        }
+
+        // One CAS per id and no waiting: when a millisecond's 4096 sequence numbers run out,
+        // or the wall clock steps back, ids carry on from the last one handed out, so they
+        // stay unique and increasing and catch up with the clock once the burst is over.
+        @Override
+        public long next() {
+            long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+            long prev;
+            long state;
+            do {
+                prev = last.get();
+                state = Math.max(now, prev + 1);
+            } while (!last.compareAndSet(prev, state));
+            long millis = state >>> SEQUENCE_BITS;
+            long sequence = state & ((1L << SEQUENCE_BITS) - 1);
+            return millis << (NODE_BITS + SEQUENCE_BITS) | nodeBits | sequence;
+        }
+    }
+}
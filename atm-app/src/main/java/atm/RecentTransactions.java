@@ -0,0 +1,75 @@
+package atm;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+// Fixed-capacity ring of an account's most recent money movements, kept as parallel
+// primitive arrays and only turned into objects/strings when someone displays them.
+//
+// Heap per account (64-bit JVM, compressed oops), versus the old unbounded
+// ArrayList<String> of preformatted lines (~75 chars, i.e. ~120 bytes per line plus the
+// list slot, growing forever):
+//   capacity 16 -> 16 * (8 receipt + 8 millis + 4 ref + 8 cents + 1 type) = 464 bytes of
+//   slots + ~100 bytes of array/object headers, allocated on the first transfer and never grown.
+// The counterparty reference points at the other Account's accountNumber string, so no
+// per-entry string is created at all.
+final class RecentTransactions {
+    static final byte TRANSFER_OUT = 1;
+    static final byte TRANSFER_IN = 2;
+    static final int DEFAULT_CAPACITY = Integer.getInteger("atm.history.recentCapacity", 16);
+
+    private final int capacity;
+    private long[] receiptIds;
+    private long[] epochMillis;
+    private String[] counterparties;
+    private long[] cents;
+    private byte[] types;
+    private int next;   // slot the next entry goes into
+    private int count;  // number of valid entries, <= capacity
+    private long added; // entries ever added; numbers them for paging
+
+    RecentTransactions() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    RecentTransactions(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    synchronized void add(long receiptId, long epochMillis, String counterparty, long cents, byte type) {
+        if (receiptIds == null) {
+            // allocated lazily: most accounts in the cache never transfer during a session
+            receiptIds = new long[capacity];
+            this.epochMillis = new long[capacity];
+            counterparties = new String[capacity];
+            this.cents = new long[capacity];
+            types = new byte[capacity];
+        }
+        receiptIds[next] = receiptId;
+        this.epochMillis[next] = epochMillis;
+        counterparties[next] = counterparty;
+        this.cents[next] = cents;
+        types[next] = type;
+        next = (next + 1) % capacity;
+        if (count < capacity) count++;
+        added++;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    // Newest first, materialized as records for display; seq counts the account's entries from 1.
+    synchronized List<AtmService.TransactionRecord> toRecords(String ownAccountNumber) {
+        List<AtmService.TransactionRecord> out = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            int slot = (next - i + capacity) % capacity;
+            boolean outgoing = types[slot] == TRANSFER_OUT;
+            out.add(new AtmService.TransactionRecord(added - i + 1, ReceiptCodes.format(receiptIds[slot]), new Timestamp(epochMillis[slot]),
+                    outgoing ? ownAccountNumber : counterparties[slot], outgoing ? counterparties[slot] : ownAccountNumber,
+                    cents[slot], outgoing ? "Transfer" : "Received"));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,104 @@
+package atm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Where the last reconciliation stopped, so the next one only reads newer ledger rows:
+// the highest transactions.seq it counted, the seq ranges below that it did not see
+// (transfers not yet committed at the time, retried once by the next run), and the
+// ledger balance of every account as of that point.
+//
+// File layout: magic, version, upperSeq, asOf millis, hole count and [from, to] pairs,
+// account count, then (modified-UTF-8 account number, cents) per account, then the
+// crc32c of everything before it.
+final class ReconcileCheckpoint {
+    private static final int MAGIC = 0x41544D52; // "ATMR"
+    private static final int VERSION = 1;
+
+    final long upperSeq;
+    final long asOfMillis;
+    // [from, to] pairs, inclusive
+    final long[] holes;
+    // ledger balances in the expected column
+    final AccountTally balances;
+
+    private ReconcileCheckpoint(long upperSeq, long asOfMillis, long[] holes, AccountTally balances) {
+        this.upperSeq = upperSeq;
+        this.asOfMillis = asOfMillis;
+        this.holes = holes;
+        this.balances = balances;
+    }
+
+    // Null when there is no checkpoint yet; IOException when it is unreadable or corrupt.
+    static ReconcileCheckpoint read(Path path) throws IOException {
+        InputStream raw;
+        try {
+            raw = Files.newInputStream(path);
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(raw, 1 << 16), crc))) {
+            if (in.readInt() != MAGIC) throw new IOException(path + " is not a reconciliation checkpoint");
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported checkpoint version " + version + " in " + path);
+            long upperSeq = in.readLong();
+            long asOfMillis = in.readLong();
+            long[] holes = new long[in.readInt() * 2];
+            for (int i = 0; i < holes.length; i++) holes[i] = in.readLong();
+            int count = in.readInt();
+            AccountTally balances = new AccountTally(count);
+            for (int i = 0; i < count; i++) {
+                String accountNumber = in.readUTF();
+                balances.addExpected(balances.indexFor(accountNumber), in.readLong());
+            }
+            long expectedCrc = crc.getValue();
+            if (in.readLong() != expectedCrc) throw new IOException("Checkpoint " + path + " is corrupt (checksum mismatch)");
+            return new ReconcileCheckpoint(upperSeq, asOfMillis, holes, balances);
+        }
+    }
+
+    // Writes the expected column of every tally entry that is a real account, via a
+    // temporary file and an atomic rename.
+    static void write(Path path, long upperSeq, long asOfMillis, long[] holes, List<AccountTally> partitions) throws IOException {
+        int count = 0;
+        for (AccountTally t : partitions) {
+            for (int i = 0; i < t.size(); i++) if (t.actual(i) != AccountTally.NO_ACCOUNT) count++;
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (OutputStream raw = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(raw, crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(upperSeq);
+            out.writeLong(asOfMillis);
+            out.writeInt(holes.length / 2);
+            for (long h : holes) out.writeLong(h);
+            out.writeInt(count);
+            for (AccountTally t : partitions) {
+                for (int i = 0; i < t.size(); i++) {
+                    if (t.actual(i) == AccountTally.NO_ACCOUNT) continue;
+                    out.writeUTF(t.key(i));
+                    out.writeLong(t.expected(i));
+                }
+            }
+            out.flush();
+            new DataOutputStream(raw).writeLong(crc.getValue());
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
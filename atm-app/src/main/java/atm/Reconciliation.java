@@ -0,0 +1,543 @@
+package atm;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// End-of-day check that every balance agrees with the ledger:
+//
+//   accounts.balance = opening_balance + SUM(rows to it) - SUM(rows from it)
+//
+// Full mode splits the account table into key ranges and reconciles them in parallel on
+// a fork/join pool: each range reads its accounts and streams the ledger rows from and to
+// them into an AccountTally, then diffs the two. Incremental mode starts from the ledger
+// balances in a ReconcileCheckpoint and only reads the rows added since (in seq-range
+// chunks, which is where the new rows are), plus any seq gaps the last run could not
+// see yet; it still reads every balance.
+//
+// Transfers keep running while this reads, so an account that looks off is checked again
+// in one statement (its balance next to the rows that arrived after the scan, and rows
+// whose balance update is still queued in the write-behind) before it is reported.
+// Ledger rows for accounts that do not exist are reported as orphans.
+//
+//   java -cp atm-app.jar atm.Reconciliation discrepancies.csv [full]
+//
+// Configuration (system properties):
+//   atm.reconcile.checkpoint   checkpoint file; without one every run is a full run
+//   atm.reconcile.threads      ranges reconciled at once (default: cores, at most the DB pool size)
+//   atm.reconcile.partitions   account ranges (default 4 x threads)
+final class Reconciliation {
+    // seq range a single incremental task reads
+    private static final long SEQ_CHUNK = 250_000;
+
+    private static final String RECHECK_SQL =
+            "SELECT a.balance, (SELECT COALESCE(SUM(m.amount), 0) FROM ("
+                    + " SELECT t.amount AS amount FROM transactions t WHERE t.to_card = ? AND t.seq > ? AND t.pending_balance = FALSE"
+                    + " UNION ALL SELECT -t.amount FROM transactions t WHERE t.from_card = ? AND t.seq > ? AND t.pending_balance = FALSE"
+                    + " UNION ALL SELECT -t.amount FROM transactions t WHERE t.to_card = ? AND t.seq <= ? AND t.pending_balance = TRUE"
+                    + " UNION ALL SELECT t.amount FROM transactions t WHERE t.from_card = ? AND t.seq <= ? AND t.pending_balance = TRUE) m)"
+                    + " FROM accounts a WHERE a.account_number = ?";
+
+    static final class Discrepancy {
+        final String accountNumber;
+        final long expectedCents;
+        // AccountTally.NO_ACCOUNT for ledger rows of an account that does not exist
+        final long actualCents;
+
+        Discrepancy(String accountNumber, long expectedCents, long actualCents) {
+            this.accountNumber = accountNumber;
+            this.expectedCents = expectedCents;
+            this.actualCents = actualCents;
+        }
+    }
+
+    static final class Report {
+        final boolean incremental;
+        final long upperSeq;
+        final long rowsRead;
+        final long accounts;
+        final List<Discrepancy> discrepancies;
+        final long elapsedNanos;
+
+        Report(boolean incremental, long upperSeq, long rowsRead, long accounts, List<Discrepancy> discrepancies, long elapsedNanos) {
+            this.incremental = incremental;
+            this.upperSeq = upperSeq;
+            this.rowsRead = rowsRead;
+            this.accounts = accounts;
+            this.discrepancies = discrepancies;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s reconciliation up to seq %d: %d ledger rows, %d accounts, %d discrepancies in %.1f s",
+                    incremental ? "Incremental" : "Full", upperSeq, rowsRead, accounts, discrepancies.size(), elapsedNanos / 1e9);
+        }
+    }
+
+    private final int threads;
+    private final int partitions;
+    // one connection per running range, so the DB pool is never waited on
+    private final Semaphore connections;
+    private final LongAdder rowsRead = new LongAdder();
+
+    Reconciliation(int threads, int partitions) {
+        this.threads = threads;
+        this.partitions = partitions;
+        this.connections = new Semaphore(threads);
+    }
+
+    static Reconciliation fromProperties() {
+        int threads = Integer.getInteger("atm.reconcile.threads",
+                Math.min(Runtime.getRuntime().availableProcessors(), DatabaseConnection.maxPoolSize()));
+        return new Reconciliation(threads, Integer.getInteger("atm.reconcile.partitions", 4 * threads));
+    }
+
+    // With a checkpoint path, reads it (unless full) and replaces it with this run's.
+    Report run(Path checkpointPath, boolean full) throws SQLException, IOException {
+        long start = System.nanoTime();
+        ReconcileCheckpoint checkpoint = full || checkpointPath == null ? null : ReconcileCheckpoint.read(checkpointPath);
+        long asOf = System.currentTimeMillis();
+        long upper = maxSeq();
+        List<String> bounds = accountBounds();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            AccountTally delta = null;
+            long[] holes;
+            AtomicLongArray counted = null;
+            if (checkpoint != null) {
+                SeqResult scanned = pool.invoke(new SeqTask(checkpoint, checkpoint.upperSeq, upper));
+                delta = scanned.tally;
+                holes = toArray(scanned.holes);
+            } else {
+                // full mode: rows are marked as the range tasks count them; the unmarked seqs are the holes
+                counted = new AtomicLongArray((int) (upper / 64) + 1);
+                holes = null;
+            }
+            List<RangeResult> ranges = pool.invoke(new RangeTask(bounds, 0, bounds.size() - 1, checkpoint, delta, counted, upper));
+            if (counted != null) holes = holes(counted, upper);
+            List<Discrepancy> discrepancies = new ArrayList<>();
+            long accounts = 0;
+            List<AccountTally> tallies = new ArrayList<>(ranges.size());
+            for (RangeResult r : ranges) {
+                discrepancies.addAll(r.discrepancies);
+                accounts += r.accounts;
+                tallies.add(r.tally);
+            }
+            if (delta != null) discrepancies.addAll(orphans(delta, bounds, ranges));
+            if (checkpointPath != null) ReconcileCheckpoint.write(checkpointPath, upper, asOf, holes, tallies);
+            return new Report(checkpoint != null, upper, rowsRead.sum(), accounts, discrepancies, System.nanoTime() - start);
+        } catch (RuntimeException ex) {
+            if (ex.getCause() instanceof SQLException) throw (SQLException) ex.getCause();
+            throw ex;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static void writeReport(Path path, List<Discrepancy> discrepancies) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("account_number,expected,actual,difference,kind\n");
+            for (Discrepancy d : discrepancies) {
+                boolean orphan = d.actualCents == AccountTally.NO_ACCOUNT;
+                out.write(d.accountNumber + "," + Money.format(d.expectedCents) + ","
+                        + (orphan ? "" : Money.format(d.actualCents)) + ","
+                        + (orphan ? "" : Money.format(d.actualCents - d.expectedCents)) + ","
+                        + (orphan ? "ORPHAN_LEDGER_ROWS" : "MISMATCH") + "\n");
+            }
+        }
+    }
+
+    private static final class RangeResult {
+        final AccountTally tally;
+        final long accounts;
+        final List<Discrepancy> discrepancies;
+
+        RangeResult(AccountTally tally, long accounts, List<Discrepancy> discrepancies) {
+            this.tally = tally;
+            this.accounts = accounts;
+            this.discrepancies = discrepancies;
+        }
+    }
+
+    // Ranges [bounds[from], bounds[to]) of account numbers, halved until one is left.
+    // bounds[0] is "" and the last bound null (no upper limit).
+    private final class RangeTask extends RecursiveTask<List<RangeResult>> {
+        private static final long serialVersionUID = 1L;
+        final List<String> bounds;
+        final int from;
+        final int to;
+        final ReconcileCheckpoint checkpoint;
+        final AccountTally delta;
+        final AtomicLongArray counted;
+        final long upper;
+
+        RangeTask(List<String> bounds, int from, int to, ReconcileCheckpoint checkpoint, AccountTally delta, AtomicLongArray counted, long upper) {
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.checkpoint = checkpoint;
+            this.delta = delta;
+            this.counted = counted;
+            this.upper = upper;
+        }
+
+        @Override
+        protected List<RangeResult> compute() {
+            if (to - from == 1) {
+                try {
+                    return Collections.singletonList(reconcileRange(bounds.get(from), bounds.get(to), checkpoint, delta, counted, upper));
+                } catch (SQLException ex) {
+                    throw new RuntimeException(ex.getMessage(), ex);
+                }
+            }
+            int mid = (from + to) >>> 1;
+            RangeTask left = new RangeTask(bounds, from, mid, checkpoint, delta, counted, upper);
+            RangeTask right = new RangeTask(bounds, mid, to, checkpoint, delta, counted, upper);
+            invokeAll(left, right);
+            List<RangeResult> results = new ArrayList<>(left.join());
+            results.addAll(right.join());
+            return results;
+        }
+    }
+
+    // hi == null: no upper limit
+    private RangeResult reconcileRange(String lo, String hi, ReconcileCheckpoint checkpoint, AccountTally delta,
+                                       AtomicLongArray counted, long upper) throws SQLException {
+        AccountTally tally = new AccountTally(4_096);
+        List<Discrepancy> discrepancies = new ArrayList<>();
+        int accounts = 0;
+        connections.acquireUninterruptibly();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT account_number, balance, opening_balance FROM accounts WHERE " + range("account_number", hi))) {
+                bindRange(ps, lo, hi);
+                ps.setFetchSize(JdbcAccountLoader.BULK_FETCH_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        String accountNumber = rs.getString(1);
+                        int i = tally.indexFor(accountNumber);
+                        tally.setActual(i, Money.fromDecimal(rs.getBigDecimal(2)));
+                        int known = checkpoint == null ? -1 : checkpoint.balances.indexOf(accountNumber);
+                        // accounts opened since the checkpoint start from their opening balance
+                        tally.addExpected(i, known >= 0 ? checkpoint.balances.expected(known) : Money.fromDecimal(rs.getBigDecimal(3)));
+                        if (delta != null) {
+                            int d = delta.indexOf(accountNumber);
+                            if (d >= 0) tally.addExpected(i, delta.expected(d));
+                        }
+                        accounts++;
+                    }
+                }
+            }
+            if (checkpoint == null) {
+                sumLedger(conn, "from_card", lo, hi, upper, tally, -1, counted);
+                sumLedger(conn, "to_card", lo, hi, upper, tally, 1, null);
+            }
+            try (PreparedStatement recheck = conn.prepareStatement(RECHECK_SQL)) {
+                for (int i = 0; i < tally.size(); i++) {
+                    long expected = tally.expected(i);
+                    long actual = tally.actual(i);
+                    if (actual == expected) continue;
+                    if (actual == AccountTally.NO_ACCOUNT) {
+                        if (expected != 0) discrepancies.add(new Discrepancy(tally.key(i), expected, actual));
+                        continue;
+                    }
+                    Discrepancy d = recheck(recheck, tally.key(i), expected, upper);
+                    if (d != null) discrepancies.add(d);
+                }
+            }
+        } finally {
+            connections.release();
+        }
+        return new RangeResult(tally, accounts, discrepancies);
+    }
+
+    // Adds sign * amount of every row with `column` in [lo, hi) and seq <= upper; marks their seqs in `counted` when given.
+    private void sumLedger(Connection conn, String column, String lo, String hi, long upper, AccountTally tally, int sign,
+                           AtomicLongArray counted) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT " + column + ", amount, seq FROM transactions WHERE "
+                + range(column, hi) + " AND seq <= ?")) {
+            int next = bindRange(ps, lo, hi);
+            ps.setLong(next, upper);
+            ps.setFetchSize(JdbcAccountLoader.BULK_FETCH_SIZE);
+            long rows = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    tally.addExpected(tally.indexFor(rs.getString(1)), sign * Money.fromDecimal(rs.getBigDecimal(2)));
+                    if (counted != null) mark(counted, rs.getLong(3));
+                    rows++;
+                }
+            }
+            // each row is read once from each side
+            if (counted != null) rowsRead.add(rows);
+        }
+    }
+
+    // Reads the balance again next to the rows it may have moved since the scan; null when they agree.
+    private static Discrepancy recheck(PreparedStatement ps, String accountNumber, long expected, long upper) throws SQLException {
+        for (int p = 0; p < 4; p++) {
+            ps.setString(2 * p + 1, accountNumber);
+            ps.setLong(2 * p + 2, upper);
+        }
+        ps.setString(9, accountNumber);
+        try (ResultSet rs = ps.executeQuery()) {
+            // deleted meanwhile: its ledger rows are now orphans, reported by the next run
+            if (!rs.next()) return null;
+            long actual = Money.fromDecimal(rs.getBigDecimal(1));
+            long adjusted = expected + Money.fromDecimal(rs.getBigDecimal(2));
+            return actual == adjusted ? null : new Discrepancy(accountNumber, adjusted, actual);
+        }
+    }
+
+    private static final class SeqResult {
+        final AccountTally tally;
+        // [from, to] pairs
+        final List<long[]> holes;
+
+        SeqResult(AccountTally tally, List<long[]> holes) {
+            this.tally = tally;
+            this.holes = holes;
+        }
+    }
+
+    // Incremental mode: the rows with seq in (from, to], split into SEQ_CHUNK ranges, plus
+    // (in the root task) the previous run's holes. Net movement per account, and the seqs
+    // still missing.
+    private final class SeqTask extends RecursiveTask<SeqResult> {
+        private static final long serialVersionUID = 1L;
+        final ReconcileCheckpoint checkpoint;
+        final long from;
+        final long to;
+
+        SeqTask(ReconcileCheckpoint checkpoint, long from, long to) {
+            this.checkpoint = checkpoint;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SeqResult compute() {
+            if (checkpoint != null) {
+                SeqTask rows = new SeqTask(null, from, to);
+                HoleTask holes = new HoleTask(checkpoint.holes);
+                invokeAll(rows, holes);
+                SeqResult result = rows.join();
+                result.tally.addAll(holes.join());
+                return result;
+            }
+            try {
+                if (to - from <= SEQ_CHUNK) return scanSeqs(from, to);
+            } catch (SQLException ex) {
+                throw new RuntimeException(ex.getMessage(), ex);
+            }
+            long mid = from + (to - from) / 2;
+            SeqTask left = new SeqTask(null, from, mid);
+            SeqTask right = new SeqTask(null, mid, to);
+            invokeAll(left, right);
+            SeqResult a = left.join();
+            SeqResult b = right.join();
+            AccountTally big = a.tally.size() >= b.tally.size() ? a.tally : b.tally;
+            big.addAll(big == a.tally ? b.tally : a.tally);
+            List<long[]> holes = new ArrayList<>(a.holes);
+            holes.addAll(b.holes);
+            return new SeqResult(big, holes);
+        }
+    }
+
+    // Rows of the previous run's holes that have committed since.
+    private final class HoleTask extends RecursiveTask<AccountTally> {
+        private static final long serialVersionUID = 1L;
+        final long[] holes;
+
+        HoleTask(long[] holes) {
+            this.holes = holes;
+        }
+
+        @Override
+        protected AccountTally compute() {
+            AccountTally tally = new AccountTally(16);
+            if (holes.length == 0) return tally;
+            connections.acquireUninterruptibly();
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement ps = conn.prepareStatement("SELECT from_card, to_card, amount FROM transactions WHERE seq >= ? AND seq <= ?")) {
+                for (int h = 0; h < holes.length; h += 2) {
+                    ps.setLong(1, holes[h]);
+                    ps.setLong(2, holes[h + 1]);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) addRow(tally, rs.getString(1), rs.getString(2), Money.fromDecimal(rs.getBigDecimal(3)));
+                    }
+                }
+            } catch (SQLException ex) {
+                throw new RuntimeException(ex.getMessage(), ex);
+            } finally {
+                connections.release();
+            }
+            return tally;
+        }
+    }
+
+    private SeqResult scanSeqs(long from, long to) throws SQLException {
+        AccountTally tally = new AccountTally(4_096);
+        List<long[]> holes = new ArrayList<>();
+        connections.acquireUninterruptibly();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT seq, from_card, to_card, amount FROM transactions WHERE seq > ? AND seq <= ? ORDER BY seq")) {
+            ps.setLong(1, from);
+            ps.setLong(2, to);
+            ps.setFetchSize(JdbcAccountLoader.BULK_FETCH_SIZE);
+            long expectedSeq = from + 1;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long seq = rs.getLong(1);
+                    if (seq > expectedSeq) holes.add(new long[]{expectedSeq, seq - 1});
+                    expectedSeq = seq + 1;
+                    addRow(tally, rs.getString(2), rs.getString(3), Money.fromDecimal(rs.getBigDecimal(4)));
+                    rowsRead.increment();
+                }
+            }
+            if (expectedSeq <= to) holes.add(new long[]{expectedSeq, to});
+        } finally {
+            connections.release();
+        }
+        return new SeqResult(tally, holes);
+    }
+
+    private static void addRow(AccountTally tally, String from, String to, long cents) {
+        tally.addExpected(tally.indexFor(from), -cents);
+        tally.addExpected(tally.indexFor(to), cents);
+    }
+
+    // Incremental mode: accounts in the delta that no range found.
+    private static List<Discrepancy> orphans(AccountTally delta, List<String> bounds, List<RangeResult> ranges) {
+        List<Discrepancy> orphans = new ArrayList<>();
+        for (int i = 0; i < delta.size(); i++) {
+            String accountNumber = delta.key(i);
+            int r = Collections.binarySearch(bounds.subList(0, bounds.size() - 1), accountNumber);
+            RangeResult range = ranges.get(r >= 0 ? r : -r - 2);
+            if (range.tally.indexOf(accountNumber) < 0 && delta.expected(i) != 0) {
+                orphans.add(new Discrepancy(accountNumber, delta.expected(i), AccountTally.NO_ACCOUNT));
+            }
+        }
+        return orphans;
+    }
+
+    private static void mark(AtomicLongArray counted, long seq) {
+        int word = (int) (seq >>> 6);
+        long bit = 1L << seq;
+        long prev;
+        while (((prev = counted.get(word)) & bit) == 0 && !counted.compareAndSet(word, prev, prev | bit)) {
+            // retry
+        }
+    }
+
+    // Full mode: the unmarked seqs between the first marked one and upper.
+    private static long[] holes(AtomicLongArray counted, long upper) {
+        List<long[]> holes = new ArrayList<>();
+        long first = -1;
+        long holeStart = -1;
+        for (long seq = 0; seq <= upper; seq++) {
+            boolean marked = (counted.get((int) (seq >>> 6)) & (1L << seq)) != 0;
+            if (first < 0) {
+                if (marked) first = seq;
+                continue;
+            }
+            if (!marked && holeStart < 0) holeStart = seq;
+            if (marked && holeStart >= 0) {
+                holes.add(new long[]{holeStart, seq - 1});
+                holeStart = -1;
+            }
+        }
+        if (holeStart >= 0) holes.add(new long[]{holeStart, upper});
+        return toArray(holes);
+    }
+
+    private static long[] toArray(List<long[]> ranges) {
+        long[] flat = new long[ranges.size() * 2];
+        for (int i = 0; i < ranges.size(); i++) {
+            flat[2 * i] = ranges.get(i)[0];
+            flat[2 * i + 1] = ranges.get(i)[1];
+        }
+        return flat;
+    }
+
+    private static long maxSeq() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT COALESCE(MAX(seq), 0) FROM transactions");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    // partitions + 1 bounds: "", the account numbers at every 1/partitions of the table, null
+    private List<String> accountBounds() throws SQLException {
+        List<String> bounds = new ArrayList<>();
+        bounds.add("");
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            long count;
+            try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM accounts");
+                 ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                count = rs.getLong(1);
+            }
+            try (PreparedStatement ps = conn.prepareStatement("SELECT account_number FROM accounts ORDER BY account_number LIMIT 1 OFFSET ?")) {
+                for (int p = 1; p < partitions; p++) {
+                    ps.setLong(1, count * p / partitions);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) break;
+                        String bound = rs.getString(1);
+                        if (bound.compareTo(bounds.get(bounds.size() - 1)) > 0) bounds.add(bound);
+                    }
+                }
+            }
+        }
+        bounds.add(null);
+        return bounds;
+    }
+
+    private static String range(String column, String hi) {
+        return hi == null ? column + " >= ?" : column + " >= ? AND " + column + " < ?";
+    }
+
+    // Returns the next parameter index.
+    private static int bindRange(PreparedStatement ps, String lo, String hi) throws SQLException {
+        ps.setString(1, lo);
+        if (hi == null) return 2;
+        ps.setString(2, hi);
+        return 3;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2 || (args.length == 2 && !args[1].equals("full"))) {
+            System.err.println("Usage: Reconciliation <discrepancies.csv> [full]");
+            System.exit(2);
+        }
+        String checkpoint = System.getProperty("atm.reconcile.checkpoint");
+        Report report;
+        try {
+            report = fromProperties().run(checkpoint == null ? null : Paths.get(checkpoint), args.length == 2);
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+        writeReport(Paths.get(args[0]), report.discrepancies);
+        System.out.println(report + ".");
+        System.exit(report.discrepancies.isEmpty() ? 0 : 1);
+    }
+}
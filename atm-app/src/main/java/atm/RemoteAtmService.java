@@ -0,0 +1,279 @@
+package atm;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Thin-client AtmService: every call becomes one SwitchProtocol request to an
+// AtmSwitchServer over a single connection. Calls are pipelined, each completing when
+// its response (matched by request id) arrives on the reader thread. Connecting and
+// writing happen on a writer thread, so no call blocks its caller (the GUI calls from the
+// EDT). If the connection drops, outstanding calls fail and the next call reconnects,
+// resuming the login session with the token the switch handed out.
+//
+// A transfer whose request went out but whose reply never came (connection lost, or no
+// reply within atm.switch.timeoutMs) may or may not have moved money; it completes as
+// OUTCOME_UNKNOWN instead of failing.
+//
+// Accounts returned by login/findAccount are copies without a PIN.
+class RemoteAtmService implements AtmService {
+    private static final long TIMEOUT_MILLIS = Long.getLong("atm.switch.timeoutMs", 30_000L);
+
+    private final InetSocketAddress address;
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final Map<Integer, Pending<?>> pending = new ConcurrentHashMap<>();
+    // connects and writes, one request at a time in call order
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "atm-switch-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    // token of the last successful login, 0 for none; sent as RESUME on every new connection
+    private volatile long sessionToken;
+    // guarded by `this`
+    private SocketChannel channel;
+    private boolean shutdown;
+
+    private static final int QUEUED = 0;
+    private static final int WRITING = 1;
+    private static final int SENT = 2;
+    private static final int NOT_SENT = 3;
+
+    private static final class Pending<T> {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Function<ByteBuffer, T> decoder;
+        // QUEUED -> WRITING -> (SENT | NOT_SENT), or QUEUED -> NOT_SENT when given up before writing
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        Pending(Function<ByteBuffer, T> decoder) {
+            this.decoder = decoder;
+        }
+
+        void complete(ByteBuffer body) {
+            try {
+                future.complete(decoder.apply(body));
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(new IOException("Malformed response from switch: " + ex, ex));
+            }
+        }
+    }
+
+    RemoteAtmService(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    // host:port, e.g. the value of atm.switch.address
+    static RemoteAtmService forAddress(String hostPort) {
+        int colon = hostPort.lastIndexOf(':');
+        if (colon < 0) return new RemoteAtmService(new InetSocketAddress(hostPort, 7070));
+        return new RemoteAtmService(new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1))));
+    }
+
+    @Override
+    public CompletableFuture<Account> login(String cardOrAccount, String pin) {
+        // the switch forgets the previous login as soon as it reads this one
+        sessionToken = 0;
+        return call(SwitchProtocol.LOGIN, w -> w.putString(cardOrAccount).putString(pin), in -> {
+            Account account = SwitchProtocol.getAccount(in);
+            if (account != null) sessionToken = in.getLong();
+            return account;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Account> findAccount(String cardOrAccount) {
+        return call(SwitchProtocol.FIND_ACCOUNT, w -> w.putString(cardOrAccount), SwitchProtocol::getAccount);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> verifyPin(String accountNumber, String pin) {
+        return call(SwitchProtocol.VERIFY_PIN, w -> w.putString(accountNumber).putString(pin), SwitchProtocol::getBoolean);
+    }
+
+    @Override
+    public CompletableFuture<Long> balance(String accountNumber) {
+        return call(SwitchProtocol.BALANCE, w -> w.putString(accountNumber), ByteBuffer::getLong);
+    }
+
+    @Override
+    public CompletableFuture<TransferResult> transfer(String fromAccount, String toAccount, long cents) {
+        Pending<TransferResult> p = send(SwitchProtocol.TRANSFER, w -> w.putString(fromAccount).putString(toAccount).putLong(cents), in -> {
+            TransferStatus status = TransferStatus.values()[in.get()];
+            return new TransferResult(status, SwitchProtocol.getString(in), in.getLong(), SwitchProtocol.getString(in));
+        });
+        // before the request went out nothing can have happened; after it, the switch may have moved the money
+        return p.future.handle((result, failure) -> {
+            if (failure == null) return CompletableFuture.completedFuture(result);
+            if (p.state.compareAndSet(QUEUED, NOT_SENT) || p.state.get() == NOT_SENT) {
+                return CompletableFuture.<TransferResult>failedFuture(failure);
+            }
+            return CompletableFuture.completedFuture(new TransferResult(TransferStatus.OUTCOME_UNKNOWN, null, 0L,
+                    "The switch did not confirm this transfer, so it may or may not have gone through. "
+                            + "Check your balance and history before trying again."));
+        }).thenCompose(f -> f);
+    }
+
+    @Override
+    public CompletableFuture<Void> changePin(String accountNumber, String newPin) {
+        return call(SwitchProtocol.CHANGE_PIN, w -> w.putString(accountNumber).putString(newPin), in -> null);
+    }
+
+    @Override
+    public CompletableFuture<List<TransactionRecord>> history(String accountNumber, TransactionRecord after, int limit) {
+        return call(SwitchProtocol.HISTORY, w -> w.putString(accountNumber).putRecord(after).putInt(limit), SwitchProtocol::getRecords);
+    }
+
+    @Override
+    public CompletableFuture<List<TransactionRecord>> recentActivity(String accountNumber) {
+        return call(SwitchProtocol.RECENT_ACTIVITY, w -> w.putString(accountNumber), SwitchProtocol::getRecords);
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        writer.shutdown();
+        disconnect(null, new IOException("Service has been shut down"));
+    }
+
+    private <T> CompletableFuture<T> call(byte op, Function<SwitchProtocol.FrameWriter, SwitchProtocol.FrameWriter> request,
+                                          Function<ByteBuffer, T> decoder) {
+        return send(op, request, decoder).future;
+    }
+
+    // Returns at once; the request is written on the writer thread.
+    private <T> Pending<T> send(byte op, Function<SwitchProtocol.FrameWriter, SwitchProtocol.FrameWriter> request,
+                                Function<ByteBuffer, T> decoder) {
+        int requestId = nextRequestId.incrementAndGet();
+        Pending<T> p = new Pending<>(decoder);
+        ByteBuffer frame;
+        try {
+            frame = request.apply(new SwitchProtocol.FrameWriter(requestId, op)).finish();
+        } catch (IllegalArgumentException ex) {
+            p.future.completeExceptionally(ex);
+            return p;
+        }
+        // a reply that never comes must not leave the caller waiting forever
+        p.future.orTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).whenComplete((ignored, failure) -> pending.remove(requestId, p));
+        try {
+            writer.execute(() -> write(requestId, p, frame));
+        } catch (RejectedExecutionException ex) {
+            p.future.completeExceptionally(new IOException("Service has been shut down"));
+        }
+        return p;
+    }
+
+    // writer thread
+    private void write(int requestId, Pending<?> p, ByteBuffer frame) {
+        // timed out while queued: the caller has already been told nothing was sent
+        if (!p.state.compareAndSet(QUEUED, WRITING)) return;
+        SocketChannel ch = null;
+        try {
+            synchronized (this) {
+                ch = connected();
+                // registered before the write so a fast response always finds it
+                pending.put(requestId, p);
+                while (frame.hasRemaining()) ch.write(frame);
+            }
+            p.state.set(SENT);
+        } catch (IOException ex) {
+            // the connection is dropped below, so a partly written frame is never read by the switch
+            p.state.set(NOT_SENT);
+            pending.remove(requestId);
+            p.future.completeExceptionally(ex);
+            if (ch != null) disconnect(ch, ex);
+        }
+    }
+
+    // writer thread, holding `this`
+    private SocketChannel connected() throws IOException {
+        if (shutdown) throw new IOException("Service has been shut down");
+        if (channel == null) {
+            SocketChannel ch = SocketChannel.open(address);
+            ch.socket().setTcpNoDelay(true);
+            long token = sessionToken;
+            if (token != 0) {
+                // ahead of anything else on this connection; a refusal (request id 0) is simply ignored
+                ByteBuffer resume = new SwitchProtocol.FrameWriter(0, SwitchProtocol.RESUME).putLong(token).finish();
+                try {
+                    while (resume.hasRemaining()) ch.write(resume);
+                } catch (IOException ex) {
+                    ch.close();
+                    throw ex;
+                }
+            }
+            Thread reader = new Thread(() -> readLoop(ch), "atm-switch-client");
+            reader.setDaemon(true);
+            reader.start();
+            channel = ch;
+        }
+        return channel;
+    }
+
+    private void readLoop(SocketChannel ch) {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        try {
+            while (true) {
+                header.clear();
+                readFully(ch, header);
+                int length = header.getInt(0);
+                if (length < SwitchProtocol.HEADER - 4 || length > SwitchProtocol.MAX_FRAME) {
+                    throw new IOException("Malformed frame of " + length + " bytes from switch");
+                }
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                readFully(ch, frame);
+                frame.flip();
+                int requestId = frame.getInt();
+                byte status = frame.get();
+                Pending<?> p = pending.remove(requestId);
+                if (p == null) continue;
+                if (status == SwitchProtocol.OK) {
+                    p.complete(frame);
+                } else {
+                    p.future.completeExceptionally(new IOException(SwitchProtocol.getString(frame)));
+                }
+            }
+        } catch (IOException ex) {
+            disconnect(ch, ex);
+        }
+    }
+
+    private static void readFully(SocketChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf) < 0) throw new IOException("Connection to switch closed");
+        }
+    }
+
+    // Drops the connection (if it is still the current one) and fails every outstanding call.
+    private void disconnect(SocketChannel ch, IOException cause) {
+        SocketChannel toClose;
+        synchronized (this) {
+            if (ch != null && ch != channel) return;
+            toClose = channel;
+            channel = null;
+            // under the lock, so calls already made on a new connection are left alone
+            for (Integer id : pending.keySet()) {
+                Pending<?> p = pending.remove(id);
+                if (p != null) p.future.completeExceptionally(cause);
+            }
+        }
+        if (toClose != null) {
+            try {
+                toClose.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
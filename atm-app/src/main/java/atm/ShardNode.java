@@ -0,0 +1,362 @@
+package atm;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// One shard of a ShardedAtmService: the accounts the ShardRing gives this node, in its
+// own AccountLedger, and for each account a log of the transfer receipts it took part
+// in. Every call is idempotent by receipt id, so a coordinator that lost track of a
+// transfer can repeat any step (see ShardedAtmService.recover).
+//
+// A cross-shard transfer is a saga over two nodes:
+//   payer node  reserve  debits the payer and keeps the receipt as HELD
+//   payee node  credit   applies the credit once, unless the receipt was refused
+//   payer node  confirm  HELD -> DEBITED, or cancel: HELD -> REFUNDED, money back
+// refuse() fences a receipt on the payee node whose credit may never have arrived, so a
+// late credit cannot land after the payer was refunded.
+//
+// A receipt log and its account only change under the account's ledger lock, and move
+// together when the account migrates to another node (export/adopt).
+//
+// Nodes run in this JVM; setAvailable(false) makes every call throw UnavailableException,
+// to exercise the failure paths.
+final class ShardNode {
+    // resolved receipts are forgotten after this long; HELD ones are kept until resolved
+    private static final long RETENTION_MILLIS = Long.getLong("atm.shard.receiptRetentionMillis", 60_000L);
+
+    static final class UnavailableException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+        UnavailableException(String node) {
+            super("Shard node " + node + " is unavailable");
+        }
+    }
+
+    enum Step { LOCAL, HELD, DEBITED, REFUNDED, CREDITED, REFUSED }
+
+    // a receipt as one account saw it
+    private static final class Entry {
+        Step step;
+        final String counterparty;
+        final long cents;
+        final long at;
+
+        Entry(Step step, String counterparty, long cents, long at) {
+            this.step = step;
+            this.counterparty = counterparty;
+            this.cents = cents;
+            this.at = at;
+        }
+    }
+
+    // one account's receipts in arrival order
+    static final class ReceiptLog {
+        private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+
+        // Drops resolved entries older than the retention, oldest first; true when nothing is left.
+        boolean prune(long now) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry e = it.next();
+                if (e.at >= now - RETENTION_MILLIS) break;
+                if (e.step != Step.HELD) it.remove();
+            }
+            return entries.isEmpty();
+        }
+    }
+
+    // a cross-shard transfer whose payer side is still HELD
+    static final class Hold {
+        final long receiptId;
+        final String from;
+        final String to;
+        final long cents;
+
+        Hold(long receiptId, String from, String to, long cents) {
+            this.receiptId = receiptId;
+            this.from = from;
+            this.to = to;
+            this.cents = cents;
+        }
+    }
+
+    // an account on its way to another node
+    static final class Migrant {
+        final Account account;
+        final ReceiptLog receipts;
+
+        Migrant(Account account, ReceiptLog receipts) {
+            this.account = account;
+            this.receipts = receipts;
+        }
+    }
+
+    final String name;
+    private final AccountLedger ledger = new AccountLedger();
+    private final ConcurrentMap<String, ReceiptLog> receipts = new ConcurrentHashMap<>();
+    private volatile boolean available = true;
+
+    ShardNode(String name) {
+        this.name = name;
+    }
+
+    void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    void register(Account account) {
+        checkAvailable();
+        ledger.register(account);
+    }
+
+    Account get(String accountNumber) {
+        checkAvailable();
+        return ledger.get(accountNumber);
+    }
+
+    int size() {
+        return ledger.size();
+    }
+
+    List<String> accountNumbers() {
+        checkAvailable();
+        List<String> out = new ArrayList<>(ledger.size());
+        for (Account a : ledger.all()) out.add(a.accountNumber);
+        return out;
+    }
+
+    // Sum of the balances on this node; money in holds is not in any balance (see holds()).
+    long balanceCents() {
+        long total = 0;
+        for (Account a : ledger.all()) total += a.balanceCents;
+        return total;
+    }
+
+    // Every payer-side hold not yet confirmed or cancelled.
+    List<Hold> holds() {
+        List<Hold> held = new ArrayList<>();
+        for (Map.Entry<String, ReceiptLog> e : receipts.entrySet()) {
+            ReentrantLock lock = ledger.lockFor(e.getKey());
+            lock.lock();
+            try {
+                for (Map.Entry<Long, Entry> r : e.getValue().entries.entrySet()) {
+                    Entry entry = r.getValue();
+                    if (entry.step == Step.HELD) held.add(new Hold(r.getKey(), e.getKey(), entry.counterparty, entry.cents));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return held;
+    }
+
+    // Whether the payee side of a receipt has been credited here.
+    boolean credited(long receiptId, String to) {
+        ReentrantLock lock = ledger.lockFor(to);
+        lock.lock();
+        try {
+            Entry seen = entry(to, receiptId);
+            return seen != null && seen.step == Step.CREDITED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // With `expected` set, only replaces that exact stored value (a login's rehash losing to a PIN change).
+    void setPin(String accountNumber, String expected, String hashed) {
+        Account account = get(accountNumber);
+        if (account == null) throw new IllegalArgumentException("Unknown account " + accountNumber);
+        ReentrantLock lock = ledger.lockFor(accountNumber);
+        lock.lock();
+        try {
+            if (expected != null && account.pin != expected) return;
+            account.pin = hashed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Both accounts on this node. A missing payee is RECIPIENT_NOT_FOUND; a repeated receipt is COMPLETED.
+    AtmService.TransferStatus transferLocal(long receiptId, Account payer, String to, long cents, long now) {
+        checkAvailable();
+        Account payee = ledger.get(to);
+        if (payee == null) return AtmService.TransferStatus.RECIPIENT_NOT_FOUND;
+        return ledger.withBothLocked(payer, payee, () -> {
+            if (entry(payer.accountNumber, receiptId) != null) return AtmService.TransferStatus.COMPLETED;
+            if (!AccountLedger.applyTransfer(payer, payee, cents)) return AtmService.TransferStatus.INSUFFICIENT_FUNDS;
+            log(payer.accountNumber, receiptId, new Entry(Step.LOCAL, to, cents, now), now);
+            log(to, receiptId, new Entry(Step.LOCAL, payer.accountNumber, cents, now), now);
+            payer.addTransaction(receiptId, now, to, cents, RecentTransactions.TRANSFER_OUT);
+            payee.addTransaction(receiptId, now, payer.accountNumber, cents, RecentTransactions.TRANSFER_IN);
+            return AtmService.TransferStatus.COMPLETED;
+        });
+    }
+
+    // Saga step 1 on the payer's node. COMPLETED means the money is held (now or by an earlier
+    // call); FAILED means this receipt was already cancelled.
+    AtmService.TransferStatus reserve(long receiptId, String from, String to, long cents, long now) {
+        Account payer = require(from);
+        ReentrantLock lock = ledger.lockFor(from);
+        lock.lock();
+        try {
+            Entry seen = entry(from, receiptId);
+            if (seen != null) return seen.step == Step.REFUNDED ? AtmService.TransferStatus.FAILED : AtmService.TransferStatus.COMPLETED;
+            if (payer.balanceCents < cents) return AtmService.TransferStatus.INSUFFICIENT_FUNDS;
+            payer.balanceCents -= cents;
+            log(from, receiptId, new Entry(Step.HELD, to, cents, now), now);
+            return AtmService.TransferStatus.COMPLETED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Saga step 2 on the payee's node: COMPLETED once the credit is applied (now or before),
+    // RECIPIENT_NOT_FOUND when the payee does not exist, FAILED when recovery refused the receipt first.
+    AtmService.TransferStatus credit(long receiptId, String to, String from, long cents, long now) {
+        Account payee = get(to);
+        if (payee == null) return AtmService.TransferStatus.RECIPIENT_NOT_FOUND;
+        ReentrantLock lock = ledger.lockFor(to);
+        lock.lock();
+        try {
+            Entry seen = entry(to, receiptId);
+            if (seen != null) return seen.step == Step.CREDITED ? AtmService.TransferStatus.COMPLETED : AtmService.TransferStatus.FAILED;
+            payee.balanceCents += cents;
+            log(to, receiptId, new Entry(Step.CREDITED, from, cents, now), now);
+            payee.addTransaction(receiptId, now, from, cents, RecentTransactions.TRANSFER_IN);
+            return AtmService.TransferStatus.COMPLETED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Recovery on the payee's node: true when the receipt is now refused for good, false
+    // when its credit had already been applied (so the payer must confirm, not cancel).
+    boolean refuse(long receiptId, String to, String from, long now) {
+        Account payee = get(to);
+        if (payee == null) return true;
+        ReentrantLock lock = ledger.lockFor(to);
+        lock.lock();
+        try {
+            Entry seen = entry(to, receiptId);
+            if (seen != null) return seen.step == Step.REFUSED;
+            log(to, receiptId, new Entry(Step.REFUSED, from, 0, now), now);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Saga step 3 after a credit: HELD -> DEBITED. Anything else is left alone.
+    void confirm(long receiptId, String from, long now) {
+        Account payer = require(from);
+        ReentrantLock lock = ledger.lockFor(from);
+        lock.lock();
+        try {
+            Entry seen = entry(from, receiptId);
+            if (seen == null || seen.step != Step.HELD) return;
+            seen.step = Step.DEBITED;
+            payer.addTransaction(receiptId, now, seen.counterparty, seen.cents, RecentTransactions.TRANSFER_OUT);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Saga step 3 without a credit: HELD -> REFUNDED and the money goes back. Anything else is left alone.
+    void cancel(long receiptId, String from) {
+        Account payer = require(from);
+        ReentrantLock lock = ledger.lockFor(from);
+        lock.lock();
+        try {
+            Entry seen = entry(from, receiptId);
+            if (seen == null || seen.step != Step.HELD) return;
+            seen.step = Step.REFUNDED;
+            payer.balanceCents += seen.cents;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Forgets expired receipts and returns the holds placed before `heldBefore`, for recovery.
+    List<Hold> sweep(long now, long heldBefore) {
+        checkAvailable();
+        List<Hold> stale = new ArrayList<>();
+        for (Map.Entry<String, ReceiptLog> e : receipts.entrySet()) {
+            String accountNumber = e.getKey();
+            ReentrantLock lock = ledger.lockFor(accountNumber);
+            lock.lock();
+            try {
+                ReceiptLog log = e.getValue();
+                for (Map.Entry<Long, Entry> r : log.entries.entrySet()) {
+                    Entry entry = r.getValue();
+                    if (entry.step == Step.HELD && entry.at < heldBefore) {
+                        stale.add(new Hold(r.getKey(), accountNumber, entry.counterparty, entry.cents));
+                    }
+                }
+                if (log.prune(now)) receipts.remove(accountNumber, log);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return stale;
+    }
+
+    // Removes an account and its receipts for adoption by another node; null when it is not here.
+    Migrant export(String accountNumber) {
+        Account account = get(accountNumber);
+        if (account == null) return null;
+        ReentrantLock lock = ledger.lockFor(accountNumber);
+        lock.lock();
+        try {
+            if (!ledger.remove(account)) return null;
+            return new Migrant(account, receipts.remove(accountNumber));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void adopt(Migrant migrant) {
+        checkAvailable();
+        String accountNumber = migrant.account.accountNumber;
+        ReentrantLock lock = ledger.lockFor(accountNumber);
+        lock.lock();
+        try {
+            if (migrant.receipts != null) receipts.put(accountNumber, migrant.receipts);
+            ledger.register(migrant.account);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private Account require(String accountNumber) {
+        Account account = get(accountNumber);
+        if (account == null) throw new IllegalArgumentException("Unknown account " + accountNumber + " on shard " + name);
+        return account;
+    }
+
+    private void checkAvailable() {
+        if (!available) throw new UnavailableException(name);
+    }
+
+    // caller holds the account's lock
+    private Entry entry(String accountNumber, long receiptId) {
+        ReceiptLog log = receipts.get(accountNumber);
+        return log == null ? null : log.entries.get(receiptId);
+    }
+
+    // caller holds the account's lock
+    private void log(String accountNumber, long receiptId, Entry entry, long now) {
+        ReceiptLog log = receipts.computeIfAbsent(accountNumber, k -> new ReceiptLog());
+        log.entries.put(receiptId, entry);
+        log.prune(now);
+    }
+}
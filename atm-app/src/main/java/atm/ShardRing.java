@@ -0,0 +1,80 @@
+package atm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Immutable consistent-hash ring placing account numbers on ShardNodes. Every node owns
+// VIRTUAL_NODES points on a 64-bit ring and an account belongs to the first point at or
+// after its own hash, so adding or removing a node only moves about 1/n of the accounts
+// and spreads them over all the other nodes. Lookup is a binary search over a sorted long[].
+final class ShardRing {
+    static final int VIRTUAL_NODES = 128;
+
+    private final List<ShardNode> nodes;
+    private final long[] points;
+    private final ShardNode[] owners;
+
+    ShardRing(List<ShardNode> nodes) {
+        if (nodes.isEmpty()) throw new IllegalArgumentException("a shard ring needs at least one node");
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        long[] hashes = new long[nodes.size() * VIRTUAL_NODES];
+        int[] nodeOf = new int[hashes.length];
+        int n = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                hashes[n] = hash(nodes.get(i).name + '#' + v);
+                nodeOf[n++] = i;
+            }
+        }
+        // sort points and owners together: sort indices by hash
+        Integer[] order = new Integer[hashes.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        points = new long[hashes.length];
+        owners = new ShardNode[hashes.length];
+        for (int i = 0; i < order.length; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = nodes.get(nodeOf[order[i]]);
+        }
+    }
+
+    ShardNode owner(String accountNumber) {
+        int i = Arrays.binarySearch(points, hash(accountNumber));
+        if (i < 0) i = -i - 1;
+        return owners[i == points.length ? 0 : i];
+    }
+
+    List<ShardNode> nodes() {
+        return nodes;
+    }
+
+    ShardRing with(ShardNode node) {
+        if (nodes.contains(node)) throw new IllegalArgumentException("node " + node.name + " is already on the ring");
+        List<ShardNode> more = new ArrayList<>(nodes);
+        more.add(node);
+        return new ShardRing(more);
+    }
+
+    ShardRing without(ShardNode node) {
+        List<ShardNode> fewer = new ArrayList<>(nodes);
+        if (!fewer.remove(node)) throw new IllegalArgumentException("node " + node.name + " is not on the ring");
+        return new ShardRing(fewer);
+    }
+
+    // 64-bit FNV-1a with a murmur finalizer, so neighbouring account numbers land far apart
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
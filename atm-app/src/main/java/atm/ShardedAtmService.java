@@ -0,0 +1,517 @@
+package atm;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// AtmService over several in-process ShardNodes, accounts placed by consistent hashing of
+// the account number (ShardRing). A transfer between accounts on the same node is one
+// locked in-memory move on that node; across nodes it is a reserve/credit/confirm saga
+// keyed by the transfer's receipt id (see ShardNode), and a node failing mid-way leaves
+// a hold that recover() settles: confirmed if the credit landed, otherwise refused on the
+// payee node and refunded to the payer.
+//
+// Routing is split into ROUTE_STRIPES stripes of account numbers, each with its own ring
+// and read/write lock. Operations hold the read locks of their accounts' stripes while
+// they run; addNode/removeNode move accounts to their new owners one stripe at a time
+// under that stripe's write lock, so a rebalance pauses 1/ROUTE_STRIPES of the accounts
+// at a time and the rest keep serving. A rebalance that fails part way leaves every
+// stripe on either the old or the new ring and can simply be repeated.
+//
+// Nodes keep accounts in memory only; persistence stays with LocalAtmService and its DB.
+//
+// Configuration (system properties):
+//   atm.shard.recoveryIntervalMillis  how often recover() runs in the background (default 1000, 0 = never)
+//   atm.shard.holdTimeoutMillis       age at which a hold counts as abandoned (default 5000)
+//   atm.shard.receiptRetentionMillis  how long nodes remember resolved receipts (default 60000)
+final class ShardedAtmService implements AtmService {
+    static final int ROUTE_STRIPES = 64;
+
+    private static final class Move {
+        final String accountNumber;
+        final ShardNode from;
+        final ShardNode to;
+
+        Move(String accountNumber, ShardNode from, ShardNode to) {
+            this.accountNumber = accountNumber;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private final AtomicReferenceArray<ShardRing> routes = new AtomicReferenceArray<>(ROUTE_STRIPES);
+    private final ReentrantReadWriteLock[] routeLocks = new ReentrantReadWriteLock[ROUTE_STRIPES];
+    // the ring every stripe is on once the last rebalance finished
+    private volatile ShardRing ring;
+    // card number -> account number; cards are not what the ring hashes
+    private final ConcurrentMap<String, String> accountByCard = new ConcurrentHashMap<>();
+    private final ExecutorService executor = LocalAtmService.newExecutor();
+    private final PinVerifier pinVerifier = new PinVerifier();
+    private final TransferLimits limits = TransferLimits.fromProperties();
+    private final long holdTimeoutMillis = Long.getLong("atm.shard.holdTimeoutMillis", 5_000L);
+    private final ScheduledExecutorService recovery;
+    // account numbers registered while a rebalance runs; its up-front scan may have missed them
+    private final Set<String> lateArrivals = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebalancing;
+
+    ShardedAtmService(List<ShardNode> nodes) {
+        ring = new ShardRing(nodes);
+        for (int s = 0; s < ROUTE_STRIPES; s++) {
+            routes.set(s, ring);
+            routeLocks[s] = new ReentrantReadWriteLock();
+        }
+        long interval = Long.getLong("atm.shard.recoveryIntervalMillis", 1_000L);
+        if (interval > 0) {
+            recovery = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "atm-shard-recovery");
+                t.setDaemon(true);
+                return t;
+            });
+            recovery.scheduleWithFixedDelay(this::recoverQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            recovery = null;
+        }
+        Metrics.publish();
+    }
+
+    // n empty nodes called shard-0 .. shard-(n-1)
+    static ShardedAtmService withNodes(int n) {
+        List<ShardNode> nodes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) nodes.add(new ShardNode("shard-" + i));
+        return new ShardedAtmService(nodes);
+    }
+
+    // Places a new account on its owner node.
+    void register(Account account) {
+        int s = stripeOf(account.accountNumber);
+        Lock lock = routeLocks[s].readLock();
+        lock.lock();
+        try {
+            routes.get(s).owner(account.accountNumber).register(account);
+            if (account.cardNo != null) accountByCard.put(account.cardNo, account.accountNumber);
+            if (rebalancing) lateArrivals.add(account.accountNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Every node any stripe currently routes to.
+    List<ShardNode> nodes() {
+        Set<ShardNode> all = new LinkedHashSet<>();
+        for (int s = 0; s < ROUTE_STRIPES; s++) all.addAll(routes.get(s).nodes());
+        return new ArrayList<>(all);
+    }
+
+    ShardNode ownerOf(String accountNumber) {
+        int s = stripeOf(accountNumber);
+        Lock lock = routeLocks[s].readLock();
+        lock.lock();
+        try {
+            return routes.get(s).owner(accountNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Money across all nodes: balances, plus holds whose payee has not been credited yet (a
+    // credited hold is already in the payee's balance). Exact only while no transfer runs.
+    long totalCents() {
+        long total = 0;
+        List<ShardNode.Hold> holds = new ArrayList<>();
+        for (ShardNode node : nodes()) {
+            total += node.balanceCents();
+            holds.addAll(node.holds());
+        }
+        for (ShardNode.Hold hold : holds) {
+            if (!ownerOf(hold.to).credited(hold.receiptId, hold.to)) total += hold.cents;
+        }
+        return total;
+    }
+
+    synchronized void addNode(ShardNode node) {
+        rebalance(ring.with(node));
+    }
+
+    // Moves the node's accounts to the others; the node is idle once this returns.
+    synchronized void removeNode(ShardNode node) {
+        rebalance(ring.without(node));
+    }
+
+    // Plans every move in one pass over the nodes, then stripe by stripe, under the stripe's
+    // write lock, moves the stripe's accounts whose owner differs on `target` and switches
+    // the stripe to `target`.
+    private void rebalance(ShardRing target) {
+        long start = System.nanoTime();
+        rebalancing = true;
+        try {
+            // a register() that missed the flag has finished once every stripe's lock was free
+            for (ReentrantReadWriteLock l : routeLocks) {
+                l.writeLock().lock();
+                l.writeLock().unlock();
+            }
+            List<List<Move>> plan = new ArrayList<>(ROUTE_STRIPES);
+            for (int s = 0; s < ROUTE_STRIPES; s++) plan.add(new ArrayList<>());
+            Set<ShardNode> holders = new LinkedHashSet<>(nodes());
+            holders.addAll(target.nodes());
+            for (ShardNode holder : holders) {
+                for (String accountNumber : holder.accountNumbers()) {
+                    ShardNode owner = target.owner(accountNumber);
+                    if (owner != holder) plan.get(stripeOf(accountNumber)).add(new Move(accountNumber, holder, owner));
+                }
+            }
+            int moved = 0;
+            for (int s = 0; s < ROUTE_STRIPES; s++) moved += moveStripe(s, plan.get(s), target);
+            ring = target;
+            System.out.printf("Rebalanced onto %d shard nodes: %d accounts moved in %.1f ms.%n",
+                    target.nodes().size(), moved, (System.nanoTime() - start) / 1e6);
+        } finally {
+            rebalancing = false;
+            lateArrivals.clear();
+        }
+    }
+
+    private int moveStripe(int s, List<Move> planned, ShardRing target) {
+        Lock lock = routeLocks[s].writeLock();
+        lock.lock();
+        // undone if the stripe cannot finish
+        List<Move> done = new ArrayList<>(planned.size());
+        try {
+            for (String accountNumber : lateArrivals) {
+                if (stripeOf(accountNumber) != s) continue;
+                ShardNode holder = routes.get(s).owner(accountNumber);
+                ShardNode owner = target.owner(accountNumber);
+                if (owner != holder) planned.add(new Move(accountNumber, holder, owner));
+            }
+            for (Move move : planned) {
+                ShardNode.Migrant migrant = move.from.export(move.accountNumber);
+                if (migrant == null) continue;
+                try {
+                    move.to.adopt(migrant);
+                } catch (RuntimeException ex) {
+                    move.from.adopt(migrant);
+                    throw ex;
+                }
+                done.add(move);
+            }
+            routes.set(s, target);
+            return done.size();
+        } catch (RuntimeException ex) {
+            undo(done);
+            throw ex;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Puts a half-moved stripe back where its route still points; best effort, a node that
+    // fails meanwhile keeps what it holds until the rebalance is repeated.
+    private static void undo(List<Move> moves) {
+        for (int i = moves.size() - 1; i >= 0; i--) {
+            Move move = moves.get(i);
+            try {
+                ShardNode.Migrant migrant = move.to.export(move.accountNumber);
+                if (migrant != null) move.from.adopt(migrant);
+            } catch (RuntimeException ex) {
+                System.err.println("Could not move account " + move.accountNumber + " back to " + move.from + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    // Settles cross-shard transfers abandoned for longer than atm.shard.holdTimeoutMillis.
+    // Returns how many were settled; unreachable nodes are retried on the next call.
+    int recover() {
+        long now = System.currentTimeMillis();
+        int settled = 0;
+        for (ShardNode node : nodes()) {
+            List<ShardNode.Hold> holds;
+            try {
+                holds = node.sweep(now, now - holdTimeoutMillis);
+            } catch (ShardNode.UnavailableException ex) {
+                continue;
+            }
+            for (ShardNode.Hold hold : holds) {
+                if (settle(hold, now)) settled++;
+            }
+        }
+        return settled;
+    }
+
+    private void recoverQuietly() {
+        try {
+            int settled = recover();
+            if (settled > 0) System.out.println("Settled " + settled + " interrupted cross-shard transfers.");
+        } catch (RuntimeException ex) {
+            System.err.println("Cross-shard recovery failed: " + ex.getMessage());
+        }
+    }
+
+    // The payee node decides: a receipt it has credited is confirmed, any other is refused and refunded.
+    private boolean settle(ShardNode.Hold hold, long now) {
+        Lock[] locks = readLocks(hold.from, hold.to);
+        try {
+            ShardNode payer = routes.get(stripeOf(hold.from)).owner(hold.from);
+            ShardNode payee = routes.get(stripeOf(hold.to)).owner(hold.to);
+            if (payee.refuse(hold.receiptId, hold.to, hold.from, now)) {
+                payer.cancel(hold.receiptId, hold.from);
+            } else {
+                payer.confirm(hold.receiptId, hold.from, now);
+            }
+            return true;
+        } catch (ShardNode.UnavailableException ex) {
+            return false;
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    // A locked-out account fails with PinVerifier.LockedOutException before any hashing.
+    // Failures count against the account number whether its card or its number was typed,
+    // so both share one budget; ids that match no account count against what was typed.
+    @Override
+    public CompletableFuture<Account> login(String cardOrAccount, String pin) {
+        long start = System.nanoTime();
+        // an id probed without matching any account is refused before it costs a lookup
+        if (pinVerifier.isLocked(cardOrAccount)) {
+            return Metrics.timed(Metrics.Operation.LOGIN, start, CompletableFuture.failedFuture(new PinVerifier.LockedOutException()));
+        }
+        CompletableFuture<Account> result = submitUntimed(() -> find(cardOrAccount)).thenCompose(account -> {
+            if (account == null) {
+                pinVerifier.recordFailure(cardOrAccount);
+                return CompletableFuture.completedFuture(null);
+            }
+            String stored = account.pin;
+            return pinVerifier.verify(account.accountNumber, stored, pin).thenApply(ok -> {
+                if (!ok) return null;
+                if (PinHasher.needsRehash(stored)) {
+                    pinVerifier.hash(pin).thenAcceptAsync(hashed -> setPin(account.accountNumber, stored, hashed), executor);
+                }
+                return account;
+            });
+        });
+        return Metrics.timed(Metrics.Operation.LOGIN, start, result);
+    }
+
+    @Override
+    public CompletableFuture<Account> findAccount(String cardOrAccount) {
+        return submit(Metrics.Operation.ACCOUNT_LOOKUP, () -> find(cardOrAccount));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> verifyPin(String accountNumber, String pin) {
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> result = submitUntimed(() -> get(accountNumber)).thenCompose(account ->
+                account == null ? CompletableFuture.completedFuture(false) : pinVerifier.verify(accountNumber, account.pin, pin));
+        return Metrics.timed(Metrics.Operation.PIN_VERIFY, start, result);
+    }
+
+    @Override
+    public CompletableFuture<Long> balance(String accountNumber) {
+        return submit(Metrics.Operation.BALANCE, () -> requireAccount(accountNumber).balanceCents);
+    }
+
+    @Override
+    public CompletableFuture<TransferResult> transfer(String fromAccount, String toAccount, long cents) {
+        return submit(Metrics.Operation.TRANSFER, () -> {
+            Lock[] locks = readLocks(fromAccount, toAccount);
+            try {
+                ShardNode payerNode = routes.get(stripeOf(fromAccount)).owner(fromAccount);
+                ShardNode payeeNode = routes.get(stripeOf(toAccount)).owner(toAccount);
+                Account from;
+                try {
+                    from = payerNode.get(fromAccount);
+                } catch (ShardNode.UnavailableException ex) {
+                    return new TransferResult(TransferStatus.FAILED, null, 0, "Transfer could not be completed. No money was moved.");
+                }
+                if (from == null) throw new IllegalArgumentException("Unknown account " + fromAccount);
+                if (cents <= 0) return new TransferResult(TransferStatus.INVALID_AMOUNT, null, from.balanceCents, "Invalid amount.");
+                if (fromAccount.equals(toAccount)) {
+                    return new TransferResult(TransferStatus.SAME_ACCOUNT, null, from.balanceCents, "Cannot transfer to the same account.");
+                }
+                long now = System.currentTimeMillis();
+                String overLimit = limits.reserve(fromAccount, cents, now);
+                if (overLimit != null) return new TransferResult(TransferStatus.LIMIT_EXCEEDED, null, from.balanceCents, overLimit);
+                long receiptId = ReceiptCodes.next();
+                return payerNode == payeeNode
+                        ? transferLocal(payerNode, from, toAccount, cents, receiptId, now)
+                        : transferAcross(payerNode, payeeNode, from, toAccount, cents, receiptId, now);
+            } finally {
+                unlock(locks);
+            }
+        });
+    }
+
+    private TransferResult transferLocal(ShardNode node, Account from, String to, long cents, long receiptId, long now) {
+        TransferStatus status;
+        try {
+            status = node.transferLocal(receiptId, from, to, cents, now);
+        } catch (ShardNode.UnavailableException ex) {
+            status = TransferStatus.FAILED;
+        }
+        return status == TransferStatus.COMPLETED ? completed(receiptId, from) : declined(status, from, cents, now);
+    }
+
+    private TransferResult transferAcross(ShardNode payerNode, ShardNode payeeNode, Account from, String to, long cents,
+                                          long receiptId, long now) {
+        String receipt = ReceiptCodes.format(receiptId);
+        TransferStatus held;
+        try {
+            if (payeeNode.get(to) == null) return declined(TransferStatus.RECIPIENT_NOT_FOUND, from, cents, now);
+            held = payerNode.reserve(receiptId, from.accountNumber, to, cents, now);
+        } catch (ShardNode.UnavailableException ex) {
+            held = TransferStatus.FAILED;
+        }
+        if (held != TransferStatus.COMPLETED) return declined(held, from, cents, now);
+        TransferStatus credit;
+        try {
+            credit = payeeNode.credit(receiptId, to, from.accountNumber, cents, now);
+        } catch (ShardNode.UnavailableException ex) {
+            // the payer stays debited, and counted against its limits, until recover() settles it
+            return new TransferResult(TransferStatus.OUTCOME_UNKNOWN, receipt, from.balanceCents,
+                    "Transfer " + receipt + " is pending; it will complete or be refunded shortly. "
+                            + "Check your balance and history before trying again.");
+        }
+        boolean credited = credit == TransferStatus.COMPLETED;
+        try {
+            if (credited) {
+                payerNode.confirm(receiptId, from.accountNumber, now);
+            } else {
+                payerNode.cancel(receiptId, from.accountNumber);
+            }
+        } catch (ShardNode.UnavailableException ex) {
+            // the payee side has decided; recover() finishes the payer side the same way
+        }
+        // FAILED: recovery refused the receipt (and refunds the payer) before the credit got there
+        return credited ? completed(receiptId, from) : declined(credit, from, cents, now);
+    }
+
+    private static TransferResult completed(long receiptId, Account from) {
+        return new TransferResult(TransferStatus.COMPLETED, ReceiptCodes.format(receiptId), from.balanceCents, null);
+    }
+
+    // nothing moved: the amount no longer counts against the payer's limits
+    private TransferResult declined(TransferStatus status, Account from, long cents, long now) {
+        limits.release(from.accountNumber, cents, now);
+        switch (status) {
+            case INSUFFICIENT_FUNDS:
+                return new TransferResult(status, null, from.balanceCents, "Insufficient funds.");
+            case RECIPIENT_NOT_FOUND:
+                return new TransferResult(status, null, from.balanceCents, "Recipient account not found.");
+            default:
+                return new TransferResult(TransferStatus.FAILED, null, from.balanceCents, "Transfer could not be completed. No money was moved.");
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> changePin(String accountNumber, String newPin) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> result = submitUntimed(() -> requireAccount(accountNumber)).thenCompose(account ->
+                pinVerifier.hash(newPin).thenAcceptAsync(hashed -> setPin(accountNumber, null, hashed), executor));
+        return Metrics.timed(Metrics.Operation.PIN_CHANGE, start, result);
+    }
+
+    private void setPin(String accountNumber, String expected, String hashed) {
+        int s = stripeOf(accountNumber);
+        Lock lock = routeLocks[s].readLock();
+        lock.lock();
+        try {
+            routes.get(s).owner(accountNumber).setPin(accountNumber, expected, hashed);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Nodes keep no ledger table, so history pages through the recent transfers held in memory.
+    @Override
+    public CompletableFuture<List<TransactionRecord>> history(String accountNumber, TransactionRecord after, int limit) {
+        return submit(Metrics.Operation.HISTORY, () -> {
+            List<TransactionRecord> page = new ArrayList<>(limit);
+            for (TransactionRecord r : requireAccount(accountNumber).recentTransactions.toRecords(accountNumber)) {
+                if (page.size() == limit) break;
+                if (after == null || r.seq < after.seq) page.add(r);
+            }
+            return page;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<TransactionRecord>> recentActivity(String accountNumber) {
+        return submit(Metrics.Operation.HISTORY, () -> requireAccount(accountNumber).recentTransactions.toRecords(accountNumber));
+    }
+
+    @Override
+    public void shutdown() {
+        if (recovery != null) recovery.shutdownNow();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        pinVerifier.shutdown();
+    }
+
+    // card number first, then account number, like AccountLedger.findByCardOrAccount
+    private Account find(String cardOrAccount) {
+        String accountNumber = accountByCard.get(cardOrAccount);
+        return get(accountNumber != null ? accountNumber : cardOrAccount);
+    }
+
+    private Account get(String accountNumber) {
+        int s = stripeOf(accountNumber);
+        Lock lock = routeLocks[s].readLock();
+        lock.lock();
+        try {
+            return routes.get(s).owner(accountNumber).get(accountNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Account requireAccount(String accountNumber) {
+        Account account = get(accountNumber);
+        if (account == null) throw new IllegalArgumentException("Unknown account " + accountNumber);
+        return account;
+    }
+
+    // read locks of both accounts' stripes, lower stripe first
+    private Lock[] readLocks(String a, String b) {
+        int sa = stripeOf(a);
+        int sb = stripeOf(b);
+        Lock first = routeLocks[Math.min(sa, sb)].readLock();
+        first.lock();
+        if (sa == sb) return new Lock[] {first};
+        Lock second = routeLocks[Math.max(sa, sb)].readLock();
+        second.lock();
+        return new Lock[] {first, second};
+    }
+
+    private static void unlock(Lock[] locks) {
+        for (int i = locks.length - 1; i >= 0; i--) locks[i].unlock();
+    }
+
+    private <T> CompletableFuture<T> submit(Metrics.Operation op, LocalAtmService.CheckedSupplier<T> work) {
+        long startNanos = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> LocalAtmService.timed(op, startNanos, work), executor);
+    }
+
+    private <T> CompletableFuture<T> submitUntimed(LocalAtmService.CheckedSupplier<T> work) {
+        return CompletableFuture.supplyAsync(() -> LocalAtmService.unchecked(work), executor);
+    }
+
+    // independent of ShardRing.hash, so a stripe's accounts spread over every node
+    static int stripeOf(String accountNumber) {
+        int h = accountNumber.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (ROUTE_STRIPES - 1);
+    }
+}
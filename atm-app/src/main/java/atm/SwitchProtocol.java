@@ -0,0 +1,155 @@
+package atm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+// Wire format between terminals (RemoteAtmService) and the switch (AtmSwitchServer).
+//
+// Every frame is [int length][int requestId][byte code][body], length counting everything
+// after itself. Requests carry an opcode, responses a status (OK or ERROR, the latter with
+// a message as its body). Responses echo the requestId and may come back in any order, so
+// a terminal can keep many requests in flight on one connection. Strings are a short
+// byte length (-1 = null) followed by UTF-8; numbers are big-endian.
+final class SwitchProtocol {
+    static final int MAX_FRAME = 64 * 1024;
+    static final int HEADER = 9; // length + requestId + code
+
+    // reply: the account, then [long token] when there is one (see RESUME)
+    static final byte LOGIN = 1;
+    static final byte FIND_ACCOUNT = 2;
+    static final byte VERIFY_PIN = 3;
+    static final byte BALANCE = 4;
+    static final byte TRANSFER = 5;
+    static final byte CHANGE_PIN = 6;
+    static final byte HISTORY = 7;
+    static final byte RECENT_ACTIVITY = 8;
+    // [long token]: rebinds a new connection to the account a LOGIN reply's token stands for
+    static final byte RESUME = 9;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    private SwitchProtocol() {
+    }
+
+    // Builds one frame; the length prefix is filled in by finish().
+    static final class FrameWriter {
+        private ByteBuffer buf = ByteBuffer.allocate(128);
+
+        FrameWriter(int requestId, byte code) {
+            buf.putInt(0).putInt(requestId).put(code);
+        }
+
+        FrameWriter putByte(byte v) {
+            ensure(1).put(v);
+            return this;
+        }
+
+        FrameWriter putBoolean(boolean v) {
+            return putByte(v ? (byte) 1 : (byte) 0);
+        }
+
+        FrameWriter putInt(int v) {
+            ensure(4).putInt(v);
+            return this;
+        }
+
+        FrameWriter putLong(long v) {
+            ensure(8).putLong(v);
+            return this;
+        }
+
+        FrameWriter putString(String s) {
+            if (s == null) {
+                ensure(2).putShort((short) -1);
+                return this;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > Short.MAX_VALUE) throw new IllegalArgumentException("string too long for a frame: " + bytes.length + " bytes");
+            ensure(2 + bytes.length).putShort((short) bytes.length).put(bytes);
+            return this;
+        }
+
+        // null is sent as an absent flag
+        FrameWriter putAccount(Account a) {
+            putBoolean(a != null);
+            if (a == null) return this;
+            // the PIN never leaves the switch
+            return putString(a.accountNumber).putString(a.cardNo).putString(a.name).putString(a.ifscCode)
+                    .putString(a.address).putLong(a.balanceCents);
+        }
+
+        FrameWriter putRecord(AtmService.TransactionRecord r) {
+            putBoolean(r != null);
+            if (r == null) return this;
+            return putLong(r.seq).putString(r.receipt).putLong(r.occurredAt == null ? Long.MIN_VALUE : r.occurredAt.getTime())
+                    .putString(r.fromAccount).putString(r.toAccount).putLong(r.cents).putString(r.description);
+        }
+
+        FrameWriter putRecords(List<AtmService.TransactionRecord> records) {
+            putInt(records.size());
+            for (AtmService.TransactionRecord r : records) putRecord(r);
+            return this;
+        }
+
+        ByteBuffer finish() {
+            if (buf.position() - 4 > MAX_FRAME) throw new IllegalArgumentException("frame exceeds " + MAX_FRAME + " bytes");
+            buf.putInt(0, buf.position() - 4);
+            buf.flip();
+            return buf;
+        }
+
+        private ByteBuffer ensure(int n) {
+            if (buf.remaining() < n) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + n));
+                buf.flip();
+                bigger.put(buf);
+                buf = bigger;
+            }
+            return buf;
+        }
+    }
+
+    static boolean getBoolean(ByteBuffer in) {
+        return in.get() != 0;
+    }
+
+    static String getString(ByteBuffer in) {
+        int len = in.getShort();
+        if (len < 0) return null;
+        byte[] bytes = new byte[len];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Remote copy of an account: no PIN, not registered in any ledger.
+    static Account getAccount(ByteBuffer in) {
+        if (!getBoolean(in)) return null;
+        String accountNumber = getString(in);
+        String cardNo = getString(in);
+        String name = getString(in);
+        String ifscCode = getString(in);
+        String address = getString(in);
+        long balance = in.getLong();
+        return new Account(accountNumber, cardNo, null, balance, name, ifscCode, address);
+    }
+
+    static AtmService.TransactionRecord getRecord(ByteBuffer in) {
+        if (!getBoolean(in)) return null;
+        long seq = in.getLong();
+        String receipt = getString(in);
+        long occurredAt = in.getLong();
+        return new AtmService.TransactionRecord(seq, receipt, occurredAt == Long.MIN_VALUE ? null : new Timestamp(occurredAt),
+                getString(in), getString(in), in.getLong(), getString(in));
+    }
+
+    static List<AtmService.TransactionRecord> getRecords(ByteBuffer in) {
+        int n = in.getInt();
+        List<AtmService.TransactionRecord> records = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) records.add(getRecord(in));
+        return records;
+    }
+}
@@ -0,0 +1,102 @@
+package atm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.swing.JScrollBar;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+// Table model that pulls an account's history from the service one keyset page at a
+// time. Only the rows scrolled into (or near) view are ever fetched; all state is
+// touched on the EDT, the fetches themselves run on the service's executor.
+class TransactionHistoryModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    static final int PAGE_SIZE = 50;
+    // start fetching the next page when the user is this many rows from the end
+    private static final int PREFETCH_ROWS = 20;
+    private static final String[] COLUMNS = {"Receipt", "When", "Description", "From", "To", "Amount"};
+
+    private final transient AtmService service;
+    private final String accountNumber;
+    private final transient Consumer<String> status;
+    private final List<AtmService.TransactionRecord> rows = new ArrayList<>();
+    private boolean loading;
+    private boolean exhausted;
+
+    TransactionHistoryModel(AtmService service, String accountNumber, Consumer<String> status) {
+        this.service = service;
+        this.accountNumber = accountNumber;
+        this.status = status;
+    }
+
+    // Fetch the next page unless one is already in flight or the history is exhausted.
+    void loadMore() {
+        if (loading || exhausted) return;
+        loading = true;
+        status.accept("Loading...");
+        AtmService.TransactionRecord last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        service.history(accountNumber, last, PAGE_SIZE).whenComplete((page, error) -> SwingUtilities.invokeLater(() -> {
+            loading = false;
+            if (error != null) {
+                Throwable cause = error;
+                while (cause.getCause() != null) cause = cause.getCause();
+                status.accept("Failed to load DB transactions: " + cause.getMessage());
+                if (rows.isEmpty()) showRecentActivity(cause.getMessage());
+                return;
+            }
+            if (page.size() < PAGE_SIZE) exhausted = true;
+            if (!page.isEmpty()) {
+                int first = rows.size();
+                rows.addAll(page);
+                fireTableRowsInserted(first, rows.size() - 1);
+            }
+            status.accept(rows.isEmpty() ? "(no DB transactions)" : rows.size() + (exhausted ? " transactions" : "+ transactions"));
+        }));
+    }
+
+    // DB history is unavailable: show what this node remembers instead, and stop paging.
+    private void showRecentActivity(String reason) {
+        exhausted = true;
+        service.recentActivity(accountNumber).whenComplete((recent, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null || recent.isEmpty()) return;
+            rows.addAll(recent);
+            fireTableRowsInserted(0, rows.size() - 1);
+            status.accept("DB unavailable (" + reason + "); showing " + recent.size() + " recent transfers from this terminal");
+        }));
+    }
+
+    // Hook for the scroll pane: fetch more once the viewport nears the last loaded row.
+    void onScroll(JScrollBar bar, int rowHeight) {
+        int remaining = bar.getMaximum() - (bar.getValue() + bar.getVisibleAmount());
+        if (remaining <= PREFETCH_ROWS * rowHeight) loadMore();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        AtmService.TransactionRecord r = rows.get(rowIndex);
+        switch (columnIndex) {
+            case 0: return r.receipt;
+            case 1: return r.occurredAt;
+            case 2: return r.description;
+            case 3: return r.fromAccount;
+            case 4: return r.toAccount;
+            default: return "$" + Money.format(r.cents);
+        }
+    }
+}
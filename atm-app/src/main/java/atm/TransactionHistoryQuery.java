@@ -0,0 +1,59 @@
+package atm;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+// Keyset pagination over the ledger for one account, newest first.
+//
+// Instead of "from_card = ? OR to_card = ?" (which forces a scan or index merge) each
+// page is the UNION of two queries that each walk one composite index
+// (from_card|to_card, seq) from the cursor, so fetching any page costs about the
+// same as fetching the first one. seq is the DB-assigned insertion order and unique,
+// so the cursor is a single-column range; receipts are only displayed, since legacy
+// and random receipt codes do not sort by time (see ReceiptCodes). See schema.sql for
+// the indexes.
+final class TransactionHistoryQuery {
+    private static final String COLUMNS = "seq, receipt, occurred_at, from_card, to_card, amount, description";
+    private static final String ORDER = " ORDER BY seq DESC LIMIT ?";
+    // strictly older than the cursor row
+    private static final String AFTER = " AND seq < ?";
+
+    private static final String FIRST_PAGE_SQL = page("");
+    private static final String NEXT_PAGE_SQL = page(AFTER);
+
+    private TransactionHistoryQuery() {
+    }
+
+    private static String page(String cursorPredicate) {
+        return "SELECT " + COLUMNS + " FROM ("
+                + "(SELECT " + COLUMNS + " FROM transactions WHERE from_card = ?" + cursorPredicate + ORDER + ")"
+                + " UNION "
+                + "(SELECT " + COLUMNS + " FROM transactions WHERE to_card = ?" + cursorPredicate + ORDER + ")"
+                + ") page" + ORDER;
+    }
+
+    // Rows strictly after `after` (null for the first page), at most `limit` of them.
+    static List<AtmService.TransactionRecord> fetch(String accountNumber, AtmService.TransactionRecord after, int limit) throws SQLException {
+        List<AtmService.TransactionRecord> rows = new ArrayList<>(limit);
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(after == null ? FIRST_PAGE_SQL : NEXT_PAGE_SQL)) {
+            int i = 1;
+            for (int side = 0; side < 2; side++) {
+                ps.setString(i++, accountNumber);
+                if (after != null) ps.setLong(i++, after.seq);
+                ps.setInt(i++, limit);
+            }
+            ps.setInt(i, limit);
+            ps.setFetchSize(limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new AtmService.TransactionRecord(rs.getLong("seq"), rs.getString("receipt"), rs.getTimestamp("occurred_at"),
+                            rs.getString("from_card"), rs.getString("to_card"),
+                            Money.fromDecimal(rs.getBigDecimal("amount")), rs.getString("description")));
+                }
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,325 @@
+package atm;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Moves money between two accounts. The debit, the credit and the ledger row are
+// written in a single JDBC transaction: both balance updates go out as one batch of
+// the same conditional statement, so the database itself refuses to overdraw the
+// payer, and any failure rolls back both the database and the in-memory balances.
+//
+// The in-memory side runs under the ledger's stripe locks for the two accounts, held
+// until the DB has answered, so nobody can spend money that may still be rolled back.
+//
+// With a journal, a transfer that cannot reach the DB (or arrives while older journaled
+// work is still waiting for replay) is appended to the journal instead and completes at
+// local-disk speed; the JournalReplayer applies it to the DB later.
+//
+// With a BalanceWriteBehind the transaction holds only the ledger row, flagged
+// pending_balance, and the balance updates are coalesced and flushed by the write-behind.
+class TransferEngine {
+    // balance + delta >= 0: for the debit row this is "balance >= amount", for the credit row it always holds
+    private static final String APPLY_DELTA_SQL =
+            "UPDATE accounts SET balance = balance + ?, updated_at = CURRENT_TIMESTAMP WHERE account_number = ? AND balance + ? >= 0";
+    private static final String INSERT_LEDGER_SQL =
+            "INSERT INTO transactions (receipt, from_card, to_card, amount, description) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_PENDING_LEDGER_SQL =
+            "INSERT INTO transactions (receipt, from_card, to_card, amount, description, pending_balance) VALUES (?, ?, ?, ?, ?, TRUE)";
+
+    private final AccountLedger ledger;
+    private final boolean persistent;
+    private final WriteAheadJournal journal;
+    private final BalanceWriteBehind writeBehind;
+
+    // persistent=false keeps transfers in memory only (used when running on the fallback accounts)
+    TransferEngine(AccountLedger ledger, boolean persistent) {
+        this(ledger, persistent, null);
+    }
+
+    // journal may be null; when set (and persistent), transfers the DB cannot take right now are journaled
+    TransferEngine(AccountLedger ledger, boolean persistent, WriteAheadJournal journal) {
+        this(ledger, persistent, journal, null);
+    }
+
+    // writeBehind may be null; only used when persistent
+    TransferEngine(AccountLedger ledger, boolean persistent, WriteAheadJournal journal, BalanceWriteBehind writeBehind) {
+        this.ledger = ledger;
+        this.persistent = persistent;
+        this.journal = journal;
+        this.writeBehind = persistent ? writeBehind : null;
+    }
+
+    // Returns false when the payer cannot cover the amount (in memory or in the DB).
+    // Throws SQLException when the transfer could not be recorded; balances are unchanged in that case.
+    // Callers reject self-transfers first (TransferStatus.SAME_ACCOUNT).
+    boolean transfer(Account from, Account to, long cents, String receipt, String description) throws SQLException {
+        if (from.accountNumber.equals(to.accountNumber)) throw new IllegalArgumentException("payer and payee are the same account");
+        if (writeBehind != null) writeBehind.awaitCapacity();
+        while (true) {
+            Account payer = from;
+            Account payee = to;
+            Boolean done = ledger.withBothLocked(payer, payee, () -> {
+                if (!ledger.isResident(payer) || !ledger.isResident(payee)) return null;
+                if (!AccountLedger.applyTransfer(payer, payee, cents)) return false;
+                // in-memory only: never journaled, the replayer would apply it to the real DB
+                if (!persistent) return true;
+                // keep DB writes in journal order while older journaled work is still pending
+                if (journal != null && journal.hasPending()) return journalTransfer(payer, payee, cents, receipt, description);
+                boolean applied;
+                try {
+                    if (writeBehind != null) {
+                        insertPendingLedgerRow(payer.accountNumber, payee.accountNumber, cents, receipt, description);
+                        writeBehind.add(payer, payee, cents, receipt);
+                        return true;
+                    }
+                    applied = persist(payer.accountNumber, payee.accountNumber, cents, receipt, description);
+                } catch (SQLException ex) {
+                    if (journal != null && isUnavailable(ex)) return journalTransfer(payer, payee, cents, receipt, description);
+                    AccountLedger.applyTransfer(payee, payer, cents);
+                    throw ex;
+                }
+                if (!applied) AccountLedger.applyTransfer(payee, payer, cents);
+                return applied;
+            });
+            if (done != null) return done;
+            // one of the accounts was evicted between lookup and locking; retry on the ledger's current copies
+            from = ledger.get(from.accountNumber);
+            to = ledger.get(to.accountNumber);
+            if (from == null || to == null) return false;
+        }
+    }
+
+    // One row of transferBatch(); the engine sets status (and message when FAILED).
+    static class BatchTransfer {
+        final Account from;
+        final Account to;
+        final long cents;
+        final String receipt;
+        final String description;
+        AtmService.TransferStatus status;
+        String message;
+
+        BatchTransfer(Account from, Account to, long cents, String receipt, String description) {
+            this.from = from;
+            this.to = to;
+            this.cents = cents;
+            this.receipt = receipt;
+            this.description = description;
+        }
+    }
+
+    // Bulk path (BulkTransferImport): many transfers in one DB transaction. Each payer's
+    // rows are checked in order against its in-memory balance; the net balance change of
+    // every account the survivors touch goes out as one batch of APPLY_DELTA_SQL, in account
+    // order, followed by one batch of ledger rows. Memory is updated only after the commit,
+    // with the accounts retained in the ledger meanwhile so none is evicted and reloaded
+    // halfway. If the DB refuses a net debit (the money was spent elsewhere first), the DB
+    // fails, or journal/write-behind work is pending, the rows go through transfer() one
+    // at a time instead.
+    void transferBatch(List<? extends BatchTransfer> batch) {
+        if (!persistent || writeBehind != null || (journal != null && journal.hasPending())) {
+            transferEach(batch);
+            return;
+        }
+        Map<String, Account> touched = new TreeMap<>();
+        Map<String, Long> deltas = new TreeMap<>();
+        List<BatchTransfer> accepted = new ArrayList<>(batch.size());
+        for (BatchTransfer t : batch) {
+            if (t.from.accountNumber.equals(t.to.accountNumber)) {
+                t.status = AtmService.TransferStatus.SAME_ACCOUNT;
+                continue;
+            }
+            long spent = -Math.min(0L, deltas.getOrDefault(t.from.accountNumber, 0L));
+            if (t.from.balanceCents - spent < t.cents) {
+                t.status = AtmService.TransferStatus.INSUFFICIENT_FUNDS;
+                continue;
+            }
+            touched.put(t.from.accountNumber, t.from);
+            touched.put(t.to.accountNumber, t.to);
+            deltas.merge(t.from.accountNumber, -t.cents, Long::sum);
+            deltas.merge(t.to.accountNumber, t.cents, Long::sum);
+            accepted.add(t);
+        }
+        if (accepted.isEmpty()) return;
+        List<Account> retained = new ArrayList<>(touched.size());
+        try {
+            for (Account account : touched.values()) {
+                if (!ledger.retain(account)) {
+                    // evicted since the caller looked it up; transfer() works on the current copies
+                    transferEach(accepted);
+                    return;
+                }
+                retained.add(account);
+            }
+            boolean committed;
+            try {
+                committed = persistBatch(deltas, accepted);
+            } catch (SQLException ex) {
+                committed = false;
+            }
+            if (!committed) {
+                transferEach(accepted);
+                return;
+            }
+            for (Map.Entry<String, Long> e : deltas.entrySet()) {
+                ReentrantLock lock = ledger.lockFor(e.getKey());
+                lock.lock();
+                try {
+                    Account account = touched.get(e.getKey());
+                    account.balanceCents += e.getValue();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            for (BatchTransfer t : accepted) t.status = AtmService.TransferStatus.COMPLETED;
+        } finally {
+            for (Account account : retained) ledger.release(account);
+        }
+    }
+
+    private void transferEach(List<? extends BatchTransfer> batch) {
+        for (BatchTransfer t : batch) {
+            if (t.from.accountNumber.equals(t.to.accountNumber)) {
+                t.status = AtmService.TransferStatus.SAME_ACCOUNT;
+                continue;
+            }
+            try {
+                t.status = transfer(t.from, t.to, t.cents, t.receipt, t.description)
+                        ? AtmService.TransferStatus.COMPLETED : AtmService.TransferStatus.INSUFFICIENT_FUNDS;
+            } catch (SQLException ex) {
+                t.status = AtmService.TransferStatus.FAILED;
+                t.message = ex.getMessage();
+            }
+        }
+    }
+
+    // False (rolled back) when a net debit would overdraw its account in the DB or an account is gone.
+    private static boolean persistBatch(Map<String, Long> deltas, List<BatchTransfer> accepted) throws SQLException {
+        try (Connection conn = connect()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement balances = conn.prepareStatement(APPLY_DELTA_SQL);
+                 PreparedStatement ledger = conn.prepareStatement(INSERT_LEDGER_SQL)) {
+                for (Map.Entry<String, Long> e : deltas.entrySet()) {
+                    balances.setBigDecimal(1, Money.toDecimal(e.getValue()));
+                    balances.setString(2, e.getKey());
+                    balances.setBigDecimal(3, Money.toDecimal(e.getValue()));
+                    balances.addBatch();
+                }
+                for (int count : balances.executeBatch()) {
+                    if (!updatedOneRow(count)) {
+                        conn.rollback();
+                        return false;
+                    }
+                }
+                for (BatchTransfer t : accepted) {
+                    ledger.setString(1, t.receipt);
+                    ledger.setString(2, t.from.accountNumber);
+                    ledger.setString(3, t.to.accountNumber);
+                    ledger.setBigDecimal(4, Money.toDecimal(t.cents));
+                    ledger.setString(5, t.description);
+                    ledger.addBatch();
+                }
+                ledger.executeBatch();
+                conn.commit();
+                return true;
+            } catch (SQLException ex) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackEx) {
+                    ex.addSuppressed(rollbackEx);
+                }
+                throw ex;
+            }
+        }
+    }
+
+    // Caller holds both locks and has already moved the money in memory.
+    private boolean journalTransfer(Account payer, Account payee, long cents, String receipt, String description) throws SQLException {
+        try {
+            journal.appendTransfer(receipt, payer.accountNumber, payee.accountNumber, cents, description, System.currentTimeMillis());
+        } catch (IOException ex) {
+            AccountLedger.applyTransfer(payee, payer, cents);
+            throw new SQLException("Transfer could not be journaled: " + ex.getMessage(), ex);
+        }
+        // the DB has not seen these balances yet; keep both accounts resident until replay
+        payer.dirty = true;
+        payee.dirty = true;
+        return true;
+    }
+
+    private static boolean persist(String from, String to, long cents, String receipt, String description) throws SQLException {
+        try (Connection conn = connect()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement balances = conn.prepareStatement(APPLY_DELTA_SQL);
+                 PreparedStatement ledger = conn.prepareStatement(INSERT_LEDGER_SQL)) {
+                balances.setBigDecimal(1, Money.toDecimal(-cents));
+                balances.setString(2, from);
+                balances.setBigDecimal(3, Money.toDecimal(-cents));
+                balances.addBatch();
+                balances.setBigDecimal(1, Money.toDecimal(cents));
+                balances.setString(2, to);
+                balances.setBigDecimal(3, Money.toDecimal(cents));
+                balances.addBatch();
+                int[] counts = balances.executeBatch();
+                if (!updatedOneRow(counts[0]) || !updatedOneRow(counts[1])) {
+                    // payer short of funds in the DB, or one of the accounts is gone
+                    conn.rollback();
+                    return false;
+                }
+                ledger.setString(1, receipt);
+                ledger.setString(2, from);
+                ledger.setString(3, to);
+                ledger.setBigDecimal(4, Money.toDecimal(cents));
+                ledger.setString(5, description);
+                ledger.executeUpdate();
+                conn.commit();
+                return true;
+            } catch (SQLException ex) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackEx) {
+                    ex.addSuppressed(rollbackEx);
+                }
+                throw ex;
+            }
+        }
+    }
+
+    // Write-behind mode: a single autocommitted insert; the balances follow in the next flush.
+    private static void insertPendingLedgerRow(String from, String to, long cents, String receipt, String description) throws SQLException {
+        try (Connection conn = connect();
+             PreparedStatement ledger = conn.prepareStatement(INSERT_PENDING_LEDGER_SQL)) {
+            ledger.setString(1, receipt);
+            ledger.setString(2, from);
+            ledger.setString(3, to);
+            ledger.setBigDecimal(4, Money.toDecimal(cents));
+            ledger.setString(5, description);
+            ledger.executeUpdate();
+        }
+    }
+
+    // A pool that cannot hand out a connection counts as the DB being unreachable.
+    private static Connection connect() throws SQLException {
+        try {
+            return DatabaseConnection.getConnection();
+        } catch (SQLException ex) {
+            throw new SQLTransientConnectionException(ex.getMessage(), "08001", ex);
+        }
+    }
+
+    // The DB could not be reached at all (as opposed to rejecting the statements).
+    static boolean isUnavailable(SQLException ex) {
+        if (ex instanceof SQLTransientConnectionException || ex instanceof SQLNonTransientConnectionException) return true;
+        String state = ex.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    static boolean updatedOneRow(int count) {
+        return count == 1 || count == Statement.SUCCESS_NO_INFO;
+    }
+}
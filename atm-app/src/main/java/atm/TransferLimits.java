@@ -0,0 +1,236 @@
+package atm;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Per-payer transfer limits, checked in memory: a rolling daily and hourly amount and a
+// velocity rule (at most N transfers in M minutes). Each payer that sent money in the
+// last day has a Window of two bucket rings with running totals, so a check is a few
+// array writes under the window's monitor, never a SUM over transactions.
+//
+// A transfer reserves its amount before it runs and releases it if it does not complete.
+// The windows slide a bucket at a time, so spending leaves them up to one bucket (30
+// minutes for the daily limit, one minute for the others) after the exact 24h/1h mark.
+// rebuild() reloads the last day of outgoing transfers at startup, except bulk imports,
+// which never count against the limits (see BulkTransferImport).
+//
+// Limits are per process: each service counts the transfers it made itself (and what
+// rebuild() read), so terminals sharing a database without a switch in front of them
+// can each let a payer spend up to the full limit. Route every terminal through one
+// AtmSwitchServer where the limits must hold across terminals.
+//
+// Configuration (system properties; an amount or count of 0 turns that rule off):
+//   atm.limits.daily            amount per rolling 24 hours (default 5000.00)
+//   atm.limits.hourly           amount per rolling hour (default 2000.00)
+//   atm.limits.maxTransfers     transfers per velocity window (default 20)
+//   atm.limits.velocityMinutes  velocity window in minutes, 1..60 (default 10)
+final class TransferLimits {
+    private static final long MINUTE_MILLIS = 60_000L;
+    private static final long DAY_BUCKET_MILLIS = 30 * MINUTE_MILLIS;
+    private static final int DAY_BUCKETS = 48;
+    private static final int HOUR_BUCKETS = 60;
+    private static final long DAY_MILLIS = DAY_BUCKET_MILLIS * DAY_BUCKETS;
+    // windows are pruned once the map has doubled since the last prune
+    private static final int MIN_PRUNE_SIZE = 1024;
+
+    private final long dailyCents;
+    private final long hourlyCents;
+    private final int maxTransfers;
+    private final int velocityMinutes;
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+    private final AtomicBoolean pruning = new AtomicBoolean();
+    private volatile int pruneAt = MIN_PRUNE_SIZE;
+
+    TransferLimits(long dailyCents, long hourlyCents, int maxTransfers, int velocityMinutes) {
+        if (velocityMinutes < 1 || velocityMinutes > HOUR_BUCKETS) {
+            throw new IllegalArgumentException("velocity window must be 1.." + HOUR_BUCKETS + " minutes: " + velocityMinutes);
+        }
+        this.dailyCents = dailyCents;
+        this.hourlyCents = hourlyCents;
+        this.maxTransfers = maxTransfers;
+        this.velocityMinutes = velocityMinutes;
+    }
+
+    static TransferLimits fromProperties() {
+        return new TransferLimits(
+                Money.parseCents(System.getProperty("atm.limits.daily", "5000.00")),
+                Money.parseCents(System.getProperty("atm.limits.hourly", "2000.00")),
+                Integer.getInteger("atm.limits.maxTransfers", 20),
+                Integer.getInteger("atm.limits.velocityMinutes", 10));
+    }
+
+    // Returns null and counts the transfer against the payer's limits when it fits,
+    // otherwise the message to show the customer (nothing is counted).
+    String reserve(String payer, long cents, long now) {
+        while (true) {
+            Window w = windowFor(payer);
+            synchronized (w) {
+                if (w.retired) continue;
+                w.advance(now);
+                if (dailyCents > 0 && w.dayCents + cents > dailyCents) {
+                    return "Daily transfer limit of $" + Money.format(dailyCents) + " exceeded.";
+                }
+                if (hourlyCents > 0 && w.hourCents + cents > hourlyCents) {
+                    return "Hourly transfer limit of $" + Money.format(hourlyCents) + " exceeded.";
+                }
+                if (maxTransfers > 0 && w.recentCount(velocityMinutes) >= maxTransfers) {
+                    return "Too many transfers; please try again later.";
+                }
+                w.add(now, cents, 1);
+                return null;
+            }
+        }
+    }
+
+    // Undoes reserve(payer, cents, at) for a transfer that did not go through.
+    void release(String payer, long cents, long at) {
+        Window w = windows.get(payer);
+        if (w == null) return;
+        synchronized (w) {
+            if (!w.retired) w.add(at, -cents, -1);
+        }
+    }
+
+    // Counts a transfer that already happened, without checking it (startup, journal replay).
+    void record(String payer, long cents, long at) {
+        while (true) {
+            Window w = windowFor(payer);
+            synchronized (w) {
+                if (w.retired) continue;
+                w.add(at, cents, 1);
+                return;
+            }
+        }
+    }
+
+    // Startup: counts every transfer of the last day against its payer. Returns the row count.
+    int rebuild() throws SQLException {
+        long now = System.currentTimeMillis();
+        int rows = 0;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT from_card, amount, occurred_at FROM transactions WHERE occurred_at >= ? AND (description IS NULL OR description <> ?)")) {
+            ps.setTimestamp(1, new Timestamp(now - DAY_MILLIS));
+            ps.setString(2, BulkTransferImport.DESCRIPTION);
+            ps.setFetchSize(JdbcAccountLoader.BULK_FETCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    record(rs.getString(1), Money.fromDecimal(rs.getBigDecimal(2)), Math.min(now, rs.getTimestamp(3).getTime()));
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private Window windowFor(String payer) {
+        Window w = windows.get(payer);
+        if (w != null) return w;
+        w = windows.computeIfAbsent(payer, k -> new Window());
+        if (windows.size() >= pruneAt && pruning.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(this::prune);
+        }
+        return w;
+    }
+
+    // Drops the windows of payers with nothing left in the last day. Amortized over the
+    // insertions that doubled the map, so it adds O(1) per transfer.
+    private void prune() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, Window> e : windows.entrySet()) {
+                Window w = e.getValue();
+                synchronized (w) {
+                    w.advance(now);
+                    if (w.dayCount == 0) {
+                        w.retired = true;
+                        windows.remove(e.getKey(), w);
+                    }
+                }
+            }
+            pruneAt = Math.max(MIN_PRUNE_SIZE, windows.size() * 2);
+        } finally {
+            pruning.set(false);
+        }
+    }
+
+    // One payer's spending: 48 half-hour buckets for the day and 60 one-minute buckets
+    // for the hour (and the velocity rule), each ring with its running totals. Guarded by
+    // its own monitor.
+    private static final class Window {
+        final long[] dayBucketCents = new long[DAY_BUCKETS];
+        final int[] dayBucketCount = new int[DAY_BUCKETS];
+        final long[] hourBucketCents = new long[HOUR_BUCKETS];
+        final int[] hourBucketCount = new int[HOUR_BUCKETS];
+        // bucket numbers (epoch millis / bucket length) of the newest slot of each ring
+        long dayHead;
+        long hourHead;
+        long dayCents;
+        int dayCount;
+        long hourCents;
+        // set when prune() drops this window; callers holding a stale reference retry
+        boolean retired;
+
+        // Clears the buckets that slid out since the last call: at most one pass over each ring.
+        void advance(long now) {
+            long day = now / DAY_BUCKET_MILLIS;
+            if (day > dayHead) {
+                long steps = Math.min(day - dayHead, DAY_BUCKETS);
+                for (long b = day - steps + 1; b <= day; b++) {
+                    int slot = (int) (b % DAY_BUCKETS);
+                    dayCents -= dayBucketCents[slot];
+                    dayCount -= dayBucketCount[slot];
+                    dayBucketCents[slot] = 0;
+                    dayBucketCount[slot] = 0;
+                }
+                dayHead = day;
+            }
+            long minute = now / MINUTE_MILLIS;
+            if (minute > hourHead) {
+                long steps = Math.min(minute - hourHead, HOUR_BUCKETS);
+                for (long b = minute - steps + 1; b <= minute; b++) {
+                    int slot = (int) (b % HOUR_BUCKETS);
+                    hourCents -= hourBucketCents[slot];
+                    hourBucketCents[slot] = 0;
+                    hourBucketCount[slot] = 0;
+                }
+                hourHead = minute;
+            }
+        }
+
+        // Adds to the buckets covering `at`; rings that have already slid past it are left alone.
+        void add(long at, long cents, int count) {
+            advance(at);
+            long day = at / DAY_BUCKET_MILLIS;
+            if (day > dayHead - DAY_BUCKETS) {
+                int slot = (int) (day % DAY_BUCKETS);
+                dayBucketCents[slot] += cents;
+                dayBucketCount[slot] += count;
+                dayCents += cents;
+                dayCount += count;
+            }
+            long minute = at / MINUTE_MILLIS;
+            if (minute > hourHead - HOUR_BUCKETS) {
+                int slot = (int) (minute % HOUR_BUCKETS);
+                hourBucketCents[slot] += cents;
+                hourBucketCount[slot] += count;
+                hourCents += cents;
+            }
+        }
+
+        // transfers in the newest `minutes` one-minute buckets; call after advance()
+        int recentCount(int minutes) {
+            int count = 0;
+            for (long b = hourHead - minutes + 1; b <= hourHead; b++) count += hourBucketCount[(int) (b % HOUR_BUCKETS)];
+            return count;
+        }
+    }
+}
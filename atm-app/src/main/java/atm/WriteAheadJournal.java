@@ -0,0 +1,299 @@
+package atm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+// Append-only, memory-mapped journal of money movements and PIN/balance writes that
+// could not (yet) reach the database. Appends are a memcpy into the mapped file; how
+// often the mapping is forced to disk is governed by the FsyncPolicy.
+//
+// File layout: a 64-byte header (magic, version, highest replayed seq) followed by
+// records of [int length][int crc32c][payload], payload = seq, type, epochMillis, cents
+// and four length-prefixed UTF-8 strings. Sequence numbers never repeat, so on recovery
+// the scan stops at the first record that is torn, fails its CRC or breaks the seq
+// chain; that also makes leftovers from before the last wrap-around invisible.
+final class WriteAheadJournal implements Closeable {
+    enum FsyncPolicy {
+        // force the record to disk before append() returns
+        ALWAYS,
+        // appenders wait for the next periodic force (group commit)
+        GROUP,
+        // force periodically, never wait; a crash may lose the last interval
+        NONE
+    }
+
+    // type 1 (absolute balance) is retired: balances only change through TRANSFER records
+    static final byte PIN = 2;
+    static final byte TRANSFER = 3;
+
+    private static final int MAGIC = 0x41544D4A; // "ATMJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int REPLAYED_SEQ_OFFSET = 8;
+    private static final int RECORD_OVERHEAD = 8; // length + crc
+
+    // One journaled operation. Unused fields are null/0 depending on the type.
+    static final class Record {
+        final long seq;
+        final byte type;
+        final long epochMillis;
+        final long cents;
+        final String receipt;
+        final String account;      // PIN: the account; TRANSFER: payer
+        final String otherAccount; // TRANSFER: payee
+        final String text;         // PIN: new pin; TRANSFER: description
+
+        Record(long seq, byte type, long epochMillis, long cents, String receipt, String account, String otherAccount, String text) {
+            this.seq = seq;
+            this.type = type;
+            this.epochMillis = epochMillis;
+            this.cents = cents;
+            this.receipt = receipt;
+            this.account = account;
+            this.otherAccount = otherAccount;
+            this.text = text;
+        }
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final FsyncPolicy policy;
+    private final long flushIntervalMs;
+    private final Deque<Record> pending = new ArrayDeque<>();
+    private final Thread flusher;
+
+    // all guarded by `this`
+    private int writePos;
+    private long lastSeq;
+    private long replayedSeq;
+    private int durablePos;
+    private long durableSeq;
+    private boolean flushing;
+    private boolean closed;
+
+    private WriteAheadJournal(Path path, int capacity, FsyncPolicy policy, long flushIntervalMs) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.capacity = (int) Math.max(capacity, channel.size());
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+        this.policy = policy;
+        this.flushIntervalMs = flushIntervalMs;
+        recover();
+        flusher = new Thread(this::flushLoop, "atm-journal-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Opens (creating if needed) the journal and recovers any records not yet replayed.
+    static WriteAheadJournal open(Path path, int capacity, FsyncPolicy policy, long flushIntervalMs) throws IOException {
+        return new WriteAheadJournal(path, capacity, policy, flushIntervalMs);
+    }
+
+    long appendTransfer(String receipt, String from, String to, long cents, String description, long epochMillis) throws IOException {
+        return append(TRANSFER, epochMillis, cents, receipt, from, to, description);
+    }
+
+    long appendPin(String account, String pin) throws IOException {
+        return append(PIN, System.currentTimeMillis(), 0L, null, account, null, pin);
+    }
+
+    // Records in seq order that have not been marked replayed yet.
+    synchronized List<Record> pending() {
+        return new ArrayList<>(pending);
+    }
+
+    synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    // Called by the replayer once everything up to and including seq is in the DB.
+    void markReplayed(long seq) throws IOException {
+        synchronized (this) {
+            if (seq <= replayedSeq) return;
+            while (!pending.isEmpty() && pending.peekFirst().seq <= seq) pending.pollFirst();
+            replayedSeq = seq;
+            buffer.putLong(REPLAYED_SEQ_OFFSET, seq);
+            // everything replayed and durable: start writing from the top again
+            if (pending.isEmpty() && durableSeq == lastSeq && !flushing) {
+                writePos = HEADER_SIZE;
+                durablePos = HEADER_SIZE;
+            }
+        }
+        buffer.force(0, HEADER_SIZE);
+    }
+
+    private long append(byte type, long epochMillis, long cents, String receipt, String account, String other, String text) throws IOException {
+        byte[][] strings = {utf8(receipt), utf8(account), utf8(other), utf8(text)};
+        int payloadLength = 8 + 1 + 8 + 8;
+        for (byte[] s : strings) payloadLength += 4 + (s == null ? 0 : s.length);
+        long seq;
+        int start;
+        synchronized (this) {
+            if (closed) throw new IOException("Journal is closed");
+            int needed = RECORD_OVERHEAD + payloadLength;
+            if (writePos + needed > capacity) {
+                throw new IOException("Journal full: " + pending.size() + " records waiting for the database");
+            }
+            seq = ++lastSeq;
+            start = writePos;
+            int p = start + RECORD_OVERHEAD;
+            buffer.putLong(p, seq);
+            buffer.put(p + 8, type);
+            buffer.putLong(p + 9, epochMillis);
+            buffer.putLong(p + 17, cents);
+            p += 25;
+            for (byte[] s : strings) {
+                buffer.putInt(p, s == null ? -1 : s.length);
+                p += 4;
+                if (s != null) {
+                    buffer.put(p, s);
+                    p += s.length;
+                }
+            }
+            buffer.putInt(start + 4, crc(start + RECORD_OVERHEAD, payloadLength));
+            // length last: a torn record without its length is simply the end of the log
+            buffer.putInt(start, payloadLength);
+            writePos = start + needed;
+            pending.addLast(new Record(seq, type, epochMillis, cents, receipt, account, other, text));
+            if (policy == FsyncPolicy.ALWAYS) {
+                buffer.force(start, needed);
+                durablePos = writePos;
+                durableSeq = seq;
+            }
+        }
+        if (policy == FsyncPolicy.GROUP) awaitDurable(seq);
+        return seq;
+    }
+
+    private synchronized void awaitDurable(long seq) throws IOException {
+        boolean interrupted = false;
+        while (durableSeq < seq && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (durableSeq < seq) throw new IOException("Journal closed before record " + seq + " was made durable");
+    }
+
+    private void flushLoop() {
+        while (true) {
+            try {
+                Thread.sleep(flushIntervalMs);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (!flushOnce()) return;
+        }
+    }
+
+    // Forces everything written so far; returns false once the journal is closed.
+    private boolean flushOnce() {
+        int from;
+        int to;
+        long seq;
+        synchronized (this) {
+            if (closed) return false;
+            if (durableSeq == lastSeq) return true;
+            from = durablePos;
+            to = writePos;
+            seq = lastSeq;
+            flushing = true;
+        }
+        try {
+            buffer.force(from, to - from);
+        } finally {
+            synchronized (this) {
+                flushing = false;
+                durablePos = to;
+                durableSeq = seq;
+                notifyAll();
+            }
+        }
+        return true;
+    }
+
+    private void recover() throws IOException {
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(REPLAYED_SEQ_OFFSET, 0L);
+            buffer.putInt(HEADER_SIZE, 0);
+            buffer.force();
+        } else if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported journal version " + buffer.getInt(4));
+        }
+        replayedSeq = buffer.getLong(REPLAYED_SEQ_OFFSET);
+        int pos = HEADER_SIZE;
+        long prevSeq = -1;
+        while (pos + RECORD_OVERHEAD <= capacity) {
+            int length = buffer.getInt(pos);
+            if (length < 25 || pos + RECORD_OVERHEAD + length > capacity) break;
+            if (buffer.getInt(pos + 4) != crc(pos + RECORD_OVERHEAD, length)) break;
+            Record r = decode(pos + RECORD_OVERHEAD);
+            if (prevSeq != -1 && r.seq != prevSeq + 1) break;
+            if (r.seq > replayedSeq) pending.addLast(r);
+            prevSeq = r.seq;
+            pos += RECORD_OVERHEAD + length;
+        }
+        lastSeq = Math.max(prevSeq, replayedSeq);
+        // nothing left to replay: the next append may start at the top of the file
+        writePos = pending.isEmpty() ? HEADER_SIZE : pos;
+        durablePos = writePos;
+        durableSeq = lastSeq;
+    }
+
+    private Record decode(int p) {
+        long seq = buffer.getLong(p);
+        byte type = buffer.get(p + 8);
+        long epochMillis = buffer.getLong(p + 9);
+        long cents = buffer.getLong(p + 17);
+        p += 25;
+        String[] strings = new String[4];
+        for (int i = 0; i < 4; i++) {
+            int len = buffer.getInt(p);
+            p += 4;
+            if (len >= 0) {
+                byte[] bytes = new byte[len];
+                buffer.get(p, bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+                p += len;
+            }
+        }
+        return new Record(seq, type, epochMillis, cents, strings[0], strings[1], strings[2], strings[3]);
+    }
+
+    private int crc(int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushOnce();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        flusher.interrupt();
+        buffer.force();
+        channel.close();
+    }
+}
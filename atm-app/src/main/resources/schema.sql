@@ -0,0 +1,58 @@
+-- Reference schema for the ATM tables. Column names match what the application
+-- reads and writes; types are kept to portable SQL.
+
+CREATE TABLE accounts (
+    account_number VARCHAR(20)    NOT NULL PRIMARY KEY,
+    card_no        VARCHAR(20)    NOT NULL,
+    pin            VARCHAR(100)   NOT NULL,
+    name           VARCHAR(100)   NOT NULL,
+    ifsc_code      VARCHAR(11)    NOT NULL,
+    address        VARCHAR(255),
+    balance        DECIMAL(15, 2) NOT NULL DEFAULT 0,
+    -- set by every UPDATE the application issues; lets a startup snapshot be refreshed
+    -- with only the rows changed since it was taken. Existing databases:
+    --   ALTER TABLE accounts ADD COLUMN updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+    updated_at     TIMESTAMP      NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    -- balance before the account's first row in transactions; Reconciliation expects
+    -- balance = opening_balance + rows in - rows out. Set it to the initial balance when
+    -- opening an account. Existing databases (baseline from today's balances):
+    --   ALTER TABLE accounts ADD COLUMN opening_balance DECIMAL(15, 2) NOT NULL DEFAULT 0
+    --   UPDATE accounts SET opening_balance = balance - <net of its transactions rows>
+    opening_balance DECIMAL(15, 2) NOT NULL DEFAULT 0
+);
+
+-- login and PIN reset look accounts up by physical card number
+CREATE UNIQUE INDEX ux_accounts_card_no ON accounts (card_no);
+
+-- snapshot refresh: MAX(updated_at) and the updated_at >= ? delta scan
+CREATE INDEX ix_accounts_updated_at ON accounts (updated_at);
+
+CREATE TABLE transactions (
+    receipt     VARCHAR(16)    NOT NULL PRIMARY KEY,
+    -- insertion order, assigned by the DB; incremental reconciliation resumes after the
+    -- last seq it counted
+    seq         BIGINT         GENERATED BY DEFAULT AS IDENTITY,
+    occurred_at TIMESTAMP      NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    from_card   VARCHAR(20)    NOT NULL,
+    to_card     VARCHAR(20)    NOT NULL,
+    amount      DECIMAL(15, 2) NOT NULL,
+    description VARCHAR(100),
+    -- TRUE while the balance updates of this transfer are still queued in the write-behind
+    -- (atm.writeBehind.windowMs); rows left TRUE by a crash are applied at the next start
+    pending_balance BOOLEAN    NOT NULL DEFAULT FALSE
+);
+
+CREATE INDEX ix_transactions_pending ON transactions (pending_balance);
+
+CREATE UNIQUE INDEX ux_transactions_seq ON transactions (seq);
+
+-- rebuilding the in-memory transfer limits at startup scans the last day (see TransferLimits)
+CREATE INDEX ix_transactions_occurred_at ON transactions (occurred_at);
+
+-- History paging runs one keyset query per side of the transfer, each of which is a
+-- range scan on one of these indexes. Pages are keyed on seq, which only grows; receipts
+-- do not sort by time (8-character codes of older builds, atm.receipt.generator=random)
+-- and are only displayed. Databases with the receipt indexes of earlier builds:
+--   DROP INDEX ix_transactions_from_receipt; DROP INDEX ix_transactions_to_receipt
+CREATE INDEX ix_transactions_from_seq ON transactions (from_card, seq DESC);
+CREATE INDEX ix_transactions_to_seq ON transactions (to_card, seq DESC);
@@ -0,0 +1,37 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class AccountLedgerTest {
+    private final AccountLedger ledger = new AccountLedger();
+
+    @Test
+    void aReplacementWithANewCardMovesTheCardIndex() {
+        Account before = new Account("1000000001", "CARD-OLD", "1234", 100_00L, "Customer", "IFSC0000001", null);
+        Account after = new Account("1000000001", "CARD-NEW", "1234", 100_00L, "Customer", "IFSC0000001", null);
+        ledger.register(before);
+
+        ledger.register(after);
+
+        assertNull(ledger.getByCard("CARD-OLD"));
+        assertSame(after, ledger.getByCard("CARD-NEW"));
+        assertSame(after, ledger.get("1000000001"));
+    }
+
+    @Test
+    void aCardMovedToAnotherAccountStaysWithItsNewOwner() {
+        ledger.register(new Account("1000000001", "CARD-1", "1234", 0L, "First", "IFSC0000001", null));
+        Account second = new Account("1000000002", "CARD-2", "1234", 0L, "Second", "IFSC0000001", null);
+        ledger.register(second);
+        // the card was reissued to the second account, then the first was re-carded
+        Account secondRecarded = new Account("1000000002", "CARD-1", "1234", 0L, "Second", "IFSC0000001", null);
+        ledger.register(secondRecarded);
+        ledger.register(new Account("1000000001", "CARD-3", "1234", 0L, "First", "IFSC0000001", null));
+
+        assertSame(secondRecarded, ledger.getByCard("CARD-1"));
+        assertNull(ledger.getByCard("CARD-2"));
+    }
+}
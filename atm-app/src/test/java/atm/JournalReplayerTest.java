@@ -0,0 +1,97 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalReplayerTest {
+    @TempDir
+    Path dir;
+
+    private WriteAheadJournal journal;
+    private JournalReplayer replayer;
+    private Path quarantine;
+    private final AtomicInteger drained = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDatabase.reset();
+        TestDatabase.insertAccount("1000000001", "CARD-1", 100_00L);
+        TestDatabase.insertAccount("1000000002", "CARD-2", 0L);
+        journal = WriteAheadJournal.open(dir.resolve("journal"), 1 << 16, WriteAheadJournal.FsyncPolicy.ALWAYS, 10);
+        quarantine = dir.resolve("journal.quarantine");
+        replayer = new JournalReplayer(journal, 10, drained::incrementAndGet, quarantine);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        journal.close();
+    }
+
+    @Test
+    void appliesEachTransferOnce() throws Exception {
+        journal.appendTransfer("R1", "1000000001", "1000000002", 30_00L, "Transfer", System.currentTimeMillis());
+
+        assertEquals(1, replayer.drain());
+        assertEquals(0, replayer.drain());
+
+        assertEquals(70_00L, TestDatabase.balance("1000000001"));
+        assertEquals(30_00L, TestDatabase.balance("1000000002"));
+        assertEquals(1, TestDatabase.ledgerRows());
+        assertFalse(journal.hasPending());
+        assertEquals(1, drained.get());
+    }
+
+    @Test
+    void skipsATransferWhoseLedgerRowIsAlreadyThere() throws Exception {
+        // applied before a crash that came ahead of markReplayed
+        journal.appendTransfer("R1", "1000000001", "1000000002", 30_00L, "Transfer", System.currentTimeMillis());
+        TestDatabase.insertLedgerRow("R1", "1000000001", "1000000002", 30_00L);
+        TestDatabase.setBalance("1000000001", 70_00L);
+        TestDatabase.setBalance("1000000002", 30_00L);
+
+        assertEquals(1, replayer.drain());
+
+        assertEquals(70_00L, TestDatabase.balance("1000000001"));
+        assertEquals(30_00L, TestDatabase.balance("1000000002"));
+        assertEquals(1, TestDatabase.ledgerRows());
+        assertFalse(Files.exists(quarantine));
+    }
+
+    @Test
+    void quarantinesAnOverdraftInsteadOfApplyingIt() throws Exception {
+        journal.appendTransfer("R1", "1000000001", "1000000002", 150_00L, "Transfer", System.currentTimeMillis());
+        journal.appendTransfer("R2", "1000000001", "1000000002", 20_00L, "Transfer", System.currentTimeMillis());
+
+        assertEquals(2, replayer.drain());
+
+        assertEquals(80_00L, TestDatabase.balance("1000000001"));
+        assertEquals(20_00L, TestDatabase.balance("1000000002"));
+        assertEquals(1, TestDatabase.ledgerRows());
+        assertFalse(journal.hasPending());
+        List<String> lines = Files.readAllLines(quarantine, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains(",R1,"), lines.get(0));
+    }
+
+    @Test
+    void quarantinesATransferToAMissingAccount() throws Exception {
+        journal.appendTransfer("R1", "1000000001", "9999999999", 10_00L, "Transfer", System.currentTimeMillis());
+
+        assertEquals(1, replayer.drain());
+
+        assertEquals(100_00L, TestDatabase.balance("1000000001"));
+        assertEquals(0, TestDatabase.ledgerRows());
+        assertEquals(1, Files.readAllLines(quarantine, StandardCharsets.UTF_8).size());
+    }
+}
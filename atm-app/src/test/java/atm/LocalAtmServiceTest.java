@@ -0,0 +1,33 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LocalAtmServiceTest {
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDatabase.reset();
+        TestDatabase.insertAccount("1000000001", "CARD-1", 100_00L);
+        TestDatabase.insertAccount("1000000002", "CARD-2", 0L);
+    }
+
+    @Test
+    void appliesBalancesLeftPendingEvenWithWriteBehindOff() throws Exception {
+        // a write-behind run stopped after the ledger insert, before its balance flush
+        TestDatabase.insertLedgerRow("R1", "1000000001", "1000000002", 30_00L);
+        TestDatabase.markBalancePending("R1");
+
+        LocalAtmService service = new LocalAtmService().start();
+        try {
+            assertTrue(service.persistent());
+            assertEquals(70_00L, TestDatabase.balance("1000000001"));
+            assertEquals(30_00L, TestDatabase.balance("1000000002"));
+            assertEquals(70_00L, service.balance("1000000001").get());
+        } finally {
+            service.shutdown();
+        }
+    }
+}
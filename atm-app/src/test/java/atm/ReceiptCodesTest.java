@@ -0,0 +1,46 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class ReceiptCodesTest {
+    @Test
+    void snowflakeIdsIncreaseAndTheirCodesSortTheSameWay() {
+        ReceiptCodes.Snowflake generator = new ReceiptCodes.Snowflake(7);
+        long previous = generator.next();
+        String previousCode = ReceiptCodes.format(previous);
+        // well past 4096 per millisecond, so the sequence overflows into later milliseconds
+        for (int i = 0; i < 100_000; i++) {
+            long id = generator.next();
+            String code = ReceiptCodes.format(id);
+            assertTrue(id > previous, "ids must increase");
+            assertTrue(code.compareTo(previousCode) > 0, code + " must sort after " + previousCode);
+            previous = id;
+            previousCode = code;
+        }
+    }
+
+    @Test
+    void nodeIdIsPartOfTheId() {
+        long id = new ReceiptCodes.Snowflake(ReceiptCodes.MAX_NODE).next();
+
+        assertEquals(ReceiptCodes.MAX_NODE, (int) (id >>> ReceiptCodes.SEQUENCE_BITS) & ReceiptCodes.MAX_NODE);
+    }
+
+    @Test
+    void codesAreFixedWidthAndCompareLikeTheIds() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long a = random.nextLong() >>> 1;
+            long b = random.nextLong() >>> 1;
+            String codeA = ReceiptCodes.format(a);
+            String codeB = ReceiptCodes.format(b);
+            assertEquals(13, codeA.length());
+            assertEquals(Long.signum(Long.compare(a, b)), Integer.signum(codeA.compareTo(codeB)));
+        }
+        assertEquals("0000000000000", ReceiptCodes.format(0L));
+    }
+}
@@ -0,0 +1,141 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ShardedAtmServiceTest {
+    static {
+        // recover() is called by the tests, not a background thread
+        System.setProperty("atm.shard.recoveryIntervalMillis", "0");
+    }
+
+    // older than atm.shard.holdTimeoutMillis (5 s), so recover() treats the hold as abandoned,
+    // and well inside atm.shard.receiptRetentionMillis (60 s), so the payee still knows the receipt
+    private static final long LONG_AGO = 10_000L;
+
+    private ShardedAtmService service;
+    private ShardNode payerNode;
+    private ShardNode payeeNode;
+    private Account payer;
+    private Account payee;
+
+    @BeforeEach
+    void setUp() {
+        service = ShardedAtmService.withNodes(2);
+        // first account on each node
+        for (long n = 1_000_000_001L; payer == null || payee == null; n++) {
+            Account a = TestDatabase.account(Long.toString(n), 100_00L);
+            service.register(a);
+            if (payer == null) {
+                payer = a;
+            } else if (payee == null && service.ownerOf(a.accountNumber) != service.ownerOf(payer.accountNumber)) {
+                payee = a;
+            }
+        }
+        payerNode = service.ownerOf(payer.accountNumber);
+        payeeNode = service.ownerOf(payee.accountNumber);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void crossShardTransferMovesMoneyAndConservesTheTotal() throws Exception {
+        long before = service.totalCents();
+
+        AtmService.TransferResult result = service.transfer(payer.accountNumber, payee.accountNumber, 30_00L).get();
+
+        assertNotSame(payerNode, payeeNode);
+        assertEquals(AtmService.TransferStatus.COMPLETED, result.status);
+        assertEquals(70_00L, payer.balanceCents);
+        assertEquals(130_00L, payee.balanceCents);
+        assertEquals(before, service.totalCents());
+        assertTrue(payerNode.holds().isEmpty());
+    }
+
+    @Test
+    void refusesSelfTransfers() throws Exception {
+        AtmService.TransferResult result = service.transfer(payer.accountNumber, payer.accountNumber, 1_00L).get();
+
+        assertEquals(AtmService.TransferStatus.SAME_ACCOUNT, result.status);
+        assertEquals(100_00L, payer.balanceCents);
+    }
+
+    @Test
+    void refusesAnOverdraftAcrossShards() throws Exception {
+        AtmService.TransferResult result = service.transfer(payer.accountNumber, payee.accountNumber, 100_01L).get();
+
+        assertEquals(AtmService.TransferStatus.INSUFFICIENT_FUNDS, result.status);
+        assertEquals(100_00L, payer.balanceCents);
+        assertEquals(100_00L, payee.balanceCents);
+    }
+
+    @Test
+    void recoveryRefundsAHoldThatWasNeverCredited() {
+        long before = service.totalCents();
+        long receiptId = ReceiptCodes.next();
+        long at = System.currentTimeMillis() - LONG_AGO;
+        // the payer node held the money, then the saga died before the credit
+        payerNode.reserve(receiptId, payer.accountNumber, payee.accountNumber, 30_00L, at);
+        assertEquals(before, service.totalCents());
+
+        assertEquals(1, service.recover());
+
+        assertEquals(100_00L, payer.balanceCents);
+        assertEquals(100_00L, payee.balanceCents);
+        assertEquals(before, service.totalCents());
+        assertTrue(payerNode.holds().isEmpty());
+        // a credit arriving after recovery is refused, not applied on top of the refund
+        assertEquals(AtmService.TransferStatus.FAILED,
+                payeeNode.credit(receiptId, payee.accountNumber, payer.accountNumber, 30_00L, System.currentTimeMillis()));
+        assertEquals(100_00L, payee.balanceCents);
+    }
+
+    @Test
+    void recoveryConfirmsAHoldThatWasCredited() {
+        long before = service.totalCents();
+        long receiptId = ReceiptCodes.next();
+        long at = System.currentTimeMillis() - LONG_AGO;
+        // the credit landed, then the saga died before the payer confirmed
+        payerNode.reserve(receiptId, payer.accountNumber, payee.accountNumber, 30_00L, at);
+        payeeNode.credit(receiptId, payee.accountNumber, payer.accountNumber, 30_00L, at);
+        assertEquals(before, service.totalCents());
+
+        assertEquals(1, service.recover());
+
+        assertEquals(70_00L, payer.balanceCents);
+        assertEquals(130_00L, payee.balanceCents);
+        assertEquals(before, service.totalCents());
+        assertTrue(payerNode.holds().isEmpty());
+    }
+
+    @Test
+    void recoveryWaitsForAnUnreachablePayee() {
+        long receiptId = ReceiptCodes.next();
+        payerNode.reserve(receiptId, payer.accountNumber, payee.accountNumber, 30_00L, System.currentTimeMillis() - LONG_AGO);
+        payeeNode.setAvailable(false);
+
+        assertEquals(0, service.recover());
+        assertEquals(70_00L, payer.balanceCents);
+        assertEquals(1, payerNode.holds().size());
+
+        payeeNode.setAvailable(true);
+        assertEquals(1, service.recover());
+        assertEquals(100_00L, payer.balanceCents);
+    }
+
+    @Test
+    void recoveryLeavesRecentHoldsAlone() {
+        payerNode.reserve(ReceiptCodes.next(), payer.accountNumber, payee.accountNumber, 30_00L, System.currentTimeMillis());
+
+        assertEquals(0, service.recover());
+        assertEquals(1, payerNode.holds().size());
+    }
+}
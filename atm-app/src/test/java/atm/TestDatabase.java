@@ -0,0 +1,109 @@
+package atm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// The in-memory H2 database surefire points atm.db.url at, rebuilt from schema.sql for
+// every test that touches it.
+final class TestDatabase {
+    private TestDatabase() {
+    }
+
+    static void reset() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("DROP ALL OBJECTS");
+            for (String sql : schema().split(";")) {
+                if (!sql.isBlank()) st.execute(sql);
+            }
+        }
+    }
+
+    static void insertAccount(String accountNumber, String cardNo, long cents) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "INSERT INTO accounts (account_number, card_no, pin, name, ifsc_code, balance, opening_balance) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            ps.setString(1, accountNumber);
+            ps.setString(2, cardNo);
+            ps.setString(3, "1234");
+            ps.setString(4, "Customer " + accountNumber);
+            ps.setString(5, "IFSC0000001");
+            ps.setBigDecimal(6, Money.toDecimal(cents));
+            ps.setBigDecimal(7, Money.toDecimal(cents));
+            ps.executeUpdate();
+        }
+    }
+
+    static long balance(String accountNumber) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT balance FROM accounts WHERE account_number = ?")) {
+            ps.setString(1, accountNumber);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new SQLException("no account " + accountNumber);
+                return Money.fromDecimal(rs.getBigDecimal(1));
+            }
+        }
+    }
+
+    static void setBalance(String accountNumber, long cents) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement("UPDATE accounts SET balance = ? WHERE account_number = ?")) {
+            ps.setBigDecimal(1, Money.toDecimal(cents));
+            ps.setString(2, accountNumber);
+            ps.executeUpdate();
+        }
+    }
+
+    static int ledgerRows() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM transactions");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    static void insertLedgerRow(String receipt, String from, String to, long cents) throws SQLException {
+        insertLedgerRow(receipt, from, to, cents, "Transfer");
+    }
+
+    static void insertLedgerRow(String receipt, String from, String to, long cents, String description) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "INSERT INTO transactions (receipt, from_card, to_card, amount, description) VALUES (?, ?, ?, ?, ?)")) {
+            ps.setString(1, receipt);
+            ps.setString(2, from);
+            ps.setString(3, to);
+            ps.setBigDecimal(4, Money.toDecimal(cents));
+            ps.setString(5, description);
+            ps.executeUpdate();
+        }
+    }
+
+    // as BalanceWriteBehind leaves a ledger row whose balance deltas are not applied yet
+    static void markBalancePending(String receipt) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement("UPDATE transactions SET pending_balance = TRUE WHERE receipt = ?")) {
+            ps.setString(1, receipt);
+            ps.executeUpdate();
+        }
+    }
+
+    static Account account(String accountNumber, long cents) {
+        return new Account(accountNumber, "CARD-" + accountNumber, "1234", cents, "Customer " + accountNumber, "IFSC0000001", null);
+    }
+
+    private static String schema() {
+        try (InputStream in = TestDatabase.class.getResourceAsStream("/schema.sql")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).replaceAll("--[^\n]*", "");
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TransactionHistoryQueryTest {
+    private static final String ACCOUNT = "1000000001";
+    private static final String OTHER = "1000000002";
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDatabase.reset();
+    }
+
+    @Test
+    void pagesNewestFirstWithoutGapsOrRepeats() throws Exception {
+        // receipts that do not sort by time: legacy 8-character codes mixed with new ones
+        String[] receipts = {"ZZZZZZZZ", "0000000000001", "MMMMMMMM", "AAAAAAAA", "0000000000002", "QQQQQQQQ", "11111111"};
+        List<String> newestFirst = new ArrayList<>();
+        for (int i = 0; i < receipts.length; i++) {
+            boolean out = i % 2 == 0;
+            TestDatabase.insertLedgerRow(receipts[i], out ? ACCOUNT : OTHER, out ? OTHER : ACCOUNT, 1_00L + i);
+            newestFirst.add(0, receipts[i]);
+        }
+        // someone else's transfer never shows up
+        TestDatabase.insertLedgerRow("XXXXXXXX", OTHER, "1000000003", 5_00L);
+
+        List<String> seen = new ArrayList<>();
+        AtmService.TransactionRecord after = null;
+        while (true) {
+            List<AtmService.TransactionRecord> page = TransactionHistoryQuery.fetch(ACCOUNT, after, 3);
+            for (AtmService.TransactionRecord r : page) seen.add(r.receipt);
+            if (page.size() < 3) break;
+            after = page.get(page.size() - 1);
+        }
+
+        assertEquals(newestFirst, seen);
+    }
+
+    @Test
+    void seqDecreasesDownTheFirstPage() throws Exception {
+        for (int i = 0; i < 5; i++) TestDatabase.insertLedgerRow("R" + i, ACCOUNT, OTHER, 1_00L);
+
+        List<AtmService.TransactionRecord> page = TransactionHistoryQuery.fetch(ACCOUNT, null, 10);
+
+        assertEquals(5, page.size());
+        for (int i = 1; i < page.size(); i++) assertTrue(page.get(i - 1).seq > page.get(i).seq);
+    }
+
+    @Test
+    void anEmptyHistoryIsAnEmptyPage() throws Exception {
+        assertTrue(TransactionHistoryQuery.fetch(ACCOUNT, null, 10).isEmpty());
+    }
+}
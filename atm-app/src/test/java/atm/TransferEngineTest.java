@@ -0,0 +1,67 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TransferEngineTest {
+    private final AccountLedger ledger = new AccountLedger();
+    private final TransferEngine engine = new TransferEngine(ledger, true);
+    private Account payer;
+    private Account payee;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDatabase.reset();
+        TestDatabase.insertAccount("1000000001", "CARD-1", 100_00L);
+        TestDatabase.insertAccount("1000000002", "CARD-2", 0L);
+        payer = TestDatabase.account("1000000001", 100_00L);
+        payee = TestDatabase.account("1000000002", 0L);
+        ledger.register(payer);
+        ledger.register(payee);
+    }
+
+    @Test
+    void movesMoneyInMemoryAndInTheDb() throws Exception {
+        assertTrue(engine.transfer(payer, payee, 40_00L, "R1", "Transfer"));
+
+        assertEquals(60_00L, payer.balanceCents);
+        assertEquals(40_00L, payee.balanceCents);
+        assertEquals(60_00L, TestDatabase.balance("1000000001"));
+        assertEquals(40_00L, TestDatabase.balance("1000000002"));
+        assertEquals(1, TestDatabase.ledgerRows());
+    }
+
+    @Test
+    void refusesWhatThePayerCannotCover() throws Exception {
+        assertFalse(engine.transfer(payer, payee, 100_01L, "R1", "Transfer"));
+
+        assertEquals(100_00L, payer.balanceCents);
+        assertEquals(0L, payee.balanceCents);
+        assertEquals(100_00L, TestDatabase.balance("1000000001"));
+        assertEquals(0, TestDatabase.ledgerRows());
+    }
+
+    @Test
+    void theDbRefusesAnOverdraftMemoryDidNotSee() throws Exception {
+        // another terminal spent most of the money; this copy still shows 100.00
+        TestDatabase.setBalance("1000000001", 10_00L);
+
+        assertFalse(engine.transfer(payer, payee, 50_00L, "R1", "Transfer"));
+
+        assertEquals(100_00L, payer.balanceCents);
+        assertEquals(0L, payee.balanceCents);
+        assertEquals(10_00L, TestDatabase.balance("1000000001"));
+        assertEquals(0L, TestDatabase.balance("1000000002"));
+        assertEquals(0, TestDatabase.ledgerRows());
+    }
+
+    @Test
+    void rejectsSelfTransfers() {
+        assertThrows(IllegalArgumentException.class, () -> engine.transfer(payer, payer, 1_00L, "R1", "Transfer"));
+    }
+}
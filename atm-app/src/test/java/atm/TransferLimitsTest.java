@@ -0,0 +1,41 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TransferLimitsTest {
+    private static final String PAYER = "1000000001";
+    private static final String PAYEE = "1000000002";
+
+    // daily 100.00, hourly and velocity off
+    private final TransferLimits limits = new TransferLimits(100_00L, 0L, 0, 10);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDatabase.reset();
+    }
+
+    @Test
+    void rebuildCountsTheLastDaysTransfers() throws Exception {
+        TestDatabase.insertLedgerRow("R1", PAYER, PAYEE, 90_00L);
+
+        assertEquals(1, limits.rebuild());
+
+        assertNotNull(limits.reserve(PAYER, 20_00L, System.currentTimeMillis()));
+        assertNull(limits.reserve(PAYER, 10_00L, System.currentTimeMillis()));
+    }
+
+    @Test
+    void rebuildSkipsBulkTransfersAsTheImportDoesLive() throws Exception {
+        TestDatabase.insertLedgerRow("R1", PAYER, PAYEE, 500_00L, BulkTransferImport.DESCRIPTION);
+        TestDatabase.insertLedgerRow("R2", PAYER, PAYEE, 10_00L, null);
+
+        assertEquals(1, limits.rebuild());
+
+        assertNull(limits.reserve(PAYER, 90_00L, System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,48 @@
+package atm;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Login hot path: PIN check on the account, and resolving the typed card number.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountBenchmarks {
+    @Param({"1000", "100000"})
+    int accounts;
+
+    AccountLedger ledger;
+    Account account;
+    String[] cards;
+
+    @Setup
+    public void setUp() {
+        ledger = new AccountLedger();
+        cards = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            cards[i] = H2Fixture.cardNo(i);
+            ledger.register(new Account(H2Fixture.accountNumber(i), cards[i], "1234", 1000_00L, "Customer " + i, "IFSC0000001", null));
+        }
+        account = ledger.get(H2Fixture.accountNumber(accounts / 2));
+    }
+
+    @Benchmark
+    public boolean authenticate() {
+        return account.authenticate(account.cardNo, "1234");
+    }
+
+    @Benchmark
+    public Account cardLookup() {
+        return ledger.findByCardOrAccount(cards[ThreadLocalRandom.current().nextInt(accounts)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Account cardLookupThreads4() {
+        return ledger.findByCardOrAccount(cards[ThreadLocalRandom.current().nextInt(accounts)]);
+    }
+}
@@ -0,0 +1,58 @@
+package atm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Embedded H2 database standing in for the terminal DB behind DatabaseConnection.
+// Must run before DatabaseConnection is first touched in the JVM (it reads atm.db.url once).
+final class H2Fixture {
+    private H2Fixture() {
+    }
+
+    static void start(String name, int accounts, long balanceCents) throws SQLException, IOException {
+        System.setProperty("atm.db.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        try (Connection conn = DatabaseConnection.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("DROP ALL OBJECTS");
+            for (String sql : schema().split(";")) {
+                if (!sql.isBlank()) st.execute(sql);
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO accounts (account_number, card_no, pin, name, ifsc_code, address, balance, opening_balance) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < accounts; i++) {
+                    ps.setString(1, accountNumber(i));
+                    ps.setString(2, cardNo(i));
+                    ps.setString(3, "1234");
+                    ps.setString(4, "Customer " + i);
+                    ps.setString(5, "IFSC0000001");
+                    ps.setString(6, null);
+                    ps.setBigDecimal(7, Money.toDecimal(balanceCents));
+                    ps.setBigDecimal(8, Money.toDecimal(balanceCents));
+                    ps.addBatch();
+                    if (i % 1000 == 999) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+
+    static String accountNumber(int i) {
+        return String.format("%010d", 1_000_000_000L + i);
+    }
+
+    static String cardNo(int i) {
+        return String.format("CARD-%07d", i);
+    }
+
+    private static String schema() throws IOException {
+        try (InputStream in = H2Fixture.class.getResourceAsStream("/schema.sql")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).replaceAll("--[^\n]*", "");
+        }
+    }
+}
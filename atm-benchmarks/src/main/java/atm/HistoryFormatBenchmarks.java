@@ -0,0 +1,56 @@
+package atm;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Turning a page of history into what the user sees: materializing the in-memory ring
+// and rendering every cell the way the history table does.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryFormatBenchmarks {
+    RecentTransactions recent;
+    List<AtmService.TransactionRecord> page;
+
+    @Setup
+    public void setUp() {
+        recent = new RecentTransactions(50);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 50; i++) {
+            recent.add(ReceiptCodes.next(), now - i * 60_000L, H2Fixture.accountNumber(i), 1_00L + i, i % 2 == 0 ? RecentTransactions.TRANSFER_OUT : RecentTransactions.TRANSFER_IN);
+        }
+        page = recent.toRecords(H2Fixture.accountNumber(999));
+    }
+
+    @Benchmark
+    public List<AtmService.TransactionRecord> materializeRecent() {
+        return recent.toRecords(H2Fixture.accountNumber(999));
+    }
+
+    @Benchmark
+    public void renderPage(Blackhole bh) {
+        for (AtmService.TransactionRecord r : page) {
+            bh.consume(r.occurredAt.toString());
+            bh.consume("$" + Money.format(r.cents));
+        }
+    }
+
+    @Benchmark
+    public void renderPageAsText(Blackhole bh) {
+        // the text layout the history dialog used before it became a table
+        for (AtmService.TransactionRecord r : page) {
+            bh.consume(String.format("%s [%s]: %s %s->%s $%s\n", r.receipt, r.occurredAt, r.description, r.fromAccount, r.toAccount, Money.format(r.cents)));
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<AtmService.TransactionRecord> materializeRecentThreads4() {
+        return recent.toRecords(H2Fixture.accountNumber(999));
+    }
+}
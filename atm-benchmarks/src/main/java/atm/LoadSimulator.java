@@ -0,0 +1,334 @@
+package atm;
+
+import java.net.InetSocketAddress;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Headless capacity test: N synthetic accounts in an embedded H2 database, driven by
+// thousands of virtual users through the real AtmService (LocalAtmService, or a
+// RemoteAtmService per user against an in-process AtmSwitchServer with switch=true).
+// shards=N runs against a ShardedAtmService of N in-memory nodes instead of the DB, and
+// addShardAt=S adds one more node S seconds into the run.
+//
+//   java -cp benchmarks.jar atm.LoadSimulator accounts=100000 users=5000 seconds=60 \
+//        thinkMs=200 zipf=1.1 mix=login:10,balance:40,transfer:30,pin:5,history:15
+//
+// Virtual users are not threads: each one has a single request in flight and schedules
+// its next step, after an exponentially distributed think time, when the previous one
+// completes. Accounts are chosen with a Zipf distribution (zipf=0 is uniform), so a few
+// hot accounts take most of the traffic. At the end it prints throughput and latency
+// percentiles per operation and checks that money was conserved: the DB total is
+// unchanged, no balance is negative, and each balance equals its opening balance plus
+// the ledger rows in and out of it. The exit status is 1 if any check fails.
+public class LoadSimulator {
+    enum Op { LOGIN, BALANCE, TRANSFER, PIN, HISTORY }
+
+    private static final long OPENING_BALANCE_CENTS = 1_000_00L;
+
+    private final int accounts;
+    private final long durationNanos;
+    private final double thinkMs;
+    private final double[] zipfCdf;
+    private final double[] mixCdf = new double[Op.values().length];
+    private final ScheduledExecutorService scheduler;
+    // current PIN per account; PIN changes rotate it
+    private final AtomicReferenceArray<String> pins;
+    private final LatencyHistogram[] latency = new LatencyHistogram[Op.values().length];
+    private final LongAdder[] errors = new LongAdder[Op.values().length];
+    private final LongAdder rejected = new LongAdder();
+    private volatile long deadline;
+
+    LoadSimulator(int accounts, double seconds, double thinkMs, double zipf, Map<Op, Integer> mix) {
+        this.accounts = accounts;
+        this.durationNanos = (long) (seconds * 1e9);
+        this.thinkMs = thinkMs;
+        this.zipfCdf = zipfCdf(accounts, zipf);
+        this.pins = new AtomicReferenceArray<>(accounts);
+        for (int i = 0; i < accounts; i++) pins.set(i, "1234");
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        double acc = 0;
+        for (Op op : Op.values()) {
+            acc += (double) mix.getOrDefault(op, 0) / total;
+            mixCdf[op.ordinal()] = acc;
+            latency[op.ordinal()] = new LatencyHistogram();
+            errors[op.ordinal()] = new LongAdder();
+        }
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread t = new Thread(r, "atm-sim");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("expected key=value, got " + arg);
+            opts.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int accounts = Integer.parseInt(opts.getOrDefault("accounts", "10000"));
+        int users = Integer.parseInt(opts.getOrDefault("users", "1000"));
+        double seconds = Double.parseDouble(opts.getOrDefault("seconds", "30"));
+        double thinkMs = Double.parseDouble(opts.getOrDefault("thinkMs", "100"));
+        double zipf = Double.parseDouble(opts.getOrDefault("zipf", "1.0"));
+        boolean viaSwitch = Boolean.parseBoolean(opts.getOrDefault("switch", "false"));
+        int shards = Integer.parseInt(opts.getOrDefault("shards", "0"));
+        double addShardAt = Double.parseDouble(opts.getOrDefault("addShardAt", "0"));
+        Map<Op, Integer> mix = parseMix(opts.getOrDefault("mix", "login:10,balance:40,transfer:30,pin:5,history:15"));
+
+        LocalAtmService local = null;
+        ShardedAtmService cluster = null;
+        AtmService target;
+        if (shards > 0) {
+            System.out.printf(Locale.ROOT, "Creating %d accounts on %d shard nodes...%n", accounts, shards);
+            cluster = ShardedAtmService.withNodes(shards);
+            for (int i = 0; i < accounts; i++) {
+                cluster.register(new Account(H2Fixture.accountNumber(i), H2Fixture.cardNo(i), "1234", OPENING_BALANCE_CENTS,
+                        "Customer " + i, "IFSC0000001", "Test Street " + i));
+            }
+            target = cluster;
+        } else {
+            System.out.printf(Locale.ROOT, "Creating %d accounts...%n", accounts);
+            H2Fixture.start("loadsim", accounts, OPENING_BALANCE_CENTS);
+            local = new LocalAtmService().start();
+            target = local;
+        }
+        AtmSwitchServer server = null;
+        Thread io = null;
+        if (viaSwitch) {
+            server = new AtmSwitchServer(target, new InetSocketAddress("127.0.0.1", 0));
+            io = new Thread(server::run, "atm-switch");
+            io.start();
+        }
+        LoadSimulator sim = new LoadSimulator(accounts, seconds, thinkMs, zipf, mix);
+        AtmService[] services = new AtmService[users];
+        for (int u = 0; u < users; u++) {
+            services[u] = server == null ? target : new RemoteAtmService(server.address());
+        }
+        // adds one node part way through the run, rebalancing under load
+        CompletableFuture<Void> rebalance = CompletableFuture.completedFuture(null);
+        if (cluster != null && addShardAt > 0) {
+            ShardedAtmService c = cluster;
+            rebalance = CompletableFuture.runAsync(() -> c.addNode(new ShardNode("shard-" + shards)),
+                    CompletableFuture.delayedExecutor((long) (addShardAt * 1000), TimeUnit.MILLISECONDS));
+        }
+        System.out.printf(Locale.ROOT, "Running %d virtual users for %.0f s (think %.0f ms, zipf %.2f, %s%s)...%n",
+                users, seconds, thinkMs, zipf, viaSwitch ? "through the switch" : "in process",
+                shards > 0 ? ", " + shards + " shard nodes" : "");
+        long elapsed = sim.run(services);
+        rebalance.join();
+        sim.report(elapsed);
+        if (server != null) {
+            for (AtmService s : services) s.shutdown();
+            server.stop();
+            io.join();
+        }
+        boolean conserved = cluster != null ? sim.checkShards(cluster) : sim.checkConservation();
+        target.shutdown();
+        System.exit(conserved ? 0 : 1);
+    }
+
+    long run(AtmService[] services) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(services.length);
+        long start = System.nanoTime();
+        deadline = start + durationNanos;
+        for (AtmService service : services) {
+            VirtualUser user = new VirtualUser(service, done);
+            // spread the first requests over one think time instead of a thundering herd
+            scheduler.schedule(user::step, (long) (ThreadLocalRandom.current().nextDouble() * thinkMs * 1000), TimeUnit.MICROSECONDS);
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        scheduler.shutdown();
+        return elapsed;
+    }
+
+    private final class VirtualUser {
+        final AtmService service;
+        final CountDownLatch done;
+        // logged-in account index, or -1
+        int account = -1;
+
+        VirtualUser(AtmService service, CountDownLatch done) {
+            this.service = service;
+            this.done = done;
+        }
+
+        void step() {
+            if (System.nanoTime() >= deadline) {
+                done.countDown();
+                return;
+            }
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            // the first step is a login; later logins start a new session, on whichever account
+            Op op = account < 0 ? Op.LOGIN : pickOp(rnd.nextDouble());
+            long start = System.nanoTime();
+            CompletableFuture<?> call;
+            switch (op) {
+                case LOGIN: {
+                    int a = pickAccount(rnd);
+                    // the switch drops the old session as soon as it reads a new login
+                    account = -1;
+                    call = service.login(H2Fixture.cardNo(a), pins.get(a)).thenAccept(acc -> {
+                        if (acc == null) {
+                            rejected.increment();
+                        } else {
+                            account = a;
+                        }
+                    });
+                    break;
+                }
+                case BALANCE:
+                    call = service.balance(H2Fixture.accountNumber(account));
+                    break;
+                case TRANSFER: {
+                    int to = pickAccount(rnd);
+                    if (to == account) to = (to + 1) % accounts;
+                    call = service.transfer(H2Fixture.accountNumber(account), H2Fixture.accountNumber(to), 1 + rnd.nextInt(5_000))
+                            .thenAccept(r -> {
+                                if (r.status == AtmService.TransferStatus.FAILED || r.status == AtmService.TransferStatus.OUTCOME_UNKNOWN) {
+                                    throw new IllegalStateException(r.message);
+                                }
+                                if (r.status != AtmService.TransferStatus.COMPLETED) rejected.increment();
+                            });
+                    break;
+                }
+                case PIN: {
+                    int a = account;
+                    String pin = String.format("%04d", rnd.nextInt(10_000));
+                    call = service.changePin(H2Fixture.accountNumber(a), pin).thenRun(() -> pins.set(a, pin));
+                    break;
+                }
+                default:
+                    call = service.history(H2Fixture.accountNumber(account), null, 50);
+                    break;
+            }
+            call.whenComplete((ignored, error) -> {
+                latency[op.ordinal()].record(System.nanoTime() - start);
+                if (error != null) errors[op.ordinal()].increment();
+                scheduler.schedule(this::step, thinkMicros(), TimeUnit.MICROSECONDS);
+            });
+        }
+    }
+
+    private long thinkMicros() {
+        if (thinkMs <= 0) return 0;
+        return (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * thinkMs * 1000);
+    }
+
+    private Op pickOp(double u) {
+        for (Op op : Op.values()) {
+            if (u < mixCdf[op.ordinal()]) return op;
+        }
+        return Op.BALANCE;
+    }
+
+    private int pickAccount(ThreadLocalRandom rnd) {
+        int i = Arrays.binarySearch(zipfCdf, rnd.nextDouble());
+        return Math.min(accounts - 1, i >= 0 ? i : -i - 1);
+    }
+
+    // cdf[k] = P(rank <= k) for P(rank = k) proportional to 1 / (k + 1)^s
+    private static double[] zipfCdf(int n, double s) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, s);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) cdf[k] /= sum;
+        return cdf;
+    }
+
+    private static Map<Op, Integer> parseMix(String spec) {
+        Map<Op, Integer> mix = new HashMap<>();
+        for (String part : spec.split(",")) {
+            String[] kv = part.split(":");
+            mix.put(Op.valueOf(kv[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(kv[1].trim()));
+        }
+        return mix;
+    }
+
+    void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long totalCalls = 0;
+        System.out.printf(Locale.ROOT, "%n%-9s %10s %10s %8s %9s %9s %9s %9s%n", "op", "calls", "calls/s", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Op op : Op.values()) {
+            LatencyHistogram h = latency[op.ordinal()];
+            totalCalls += h.count();
+            System.out.printf(Locale.ROOT, "%-9s %10d %10.1f %8d %9.2f %9.2f %9.2f %9.2f%n", op.name().toLowerCase(Locale.ROOT),
+                    h.count(), h.count() / seconds, errors[op.ordinal()].sum(),
+                    h.valueAt(0.5) / 1e6, h.valueAt(0.99) / 1e6, h.valueAt(0.999) / 1e6, h.max() / 1e6);
+        }
+        System.out.printf(Locale.ROOT, "total     %10d %10.1f   (%d declined logins/transfers)%n", totalCalls, totalCalls / seconds, rejected.sum());
+    }
+
+    // Sharded run: the nodes keep no ledger table, so checks the total across them (holds
+    // included), that every account is still on its owner node, and that none is negative.
+    boolean checkShards(ShardedAtmService cluster) {
+        long expectedTotal = accounts * OPENING_BALANCE_CENTS;
+        long total = cluster.totalCents();
+        int negative = 0;
+        int lost = 0;
+        for (int i = 0; i < accounts; i++) {
+            String accountNumber = H2Fixture.accountNumber(i);
+            Account account = cluster.ownerOf(accountNumber).get(accountNumber);
+            if (account == null) {
+                lost++;
+            } else if (account.balanceCents < 0) {
+                negative++;
+            }
+        }
+        boolean ok = total == expectedTotal && negative == 0 && lost == 0;
+        System.out.printf(Locale.ROOT, "%nConservation: total %s (expected %s), %d negative balances, %d accounts not on their owner node -> %s%n",
+                Money.format(total), Money.format(expectedTotal), negative, lost, ok ? "OK" : "VIOLATED");
+        return ok;
+    }
+
+    // Compares the DB against the opening balances and the ledger; true when nothing is off.
+    boolean checkConservation() throws SQLException {
+        long expectedTotal = accounts * OPENING_BALANCE_CENTS;
+        long total = 0;
+        int negative = 0;
+        int mismatched = 0;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT a.account_number, a.balance,"
+                             + " (SELECT COALESCE(SUM(amount), 0) FROM transactions t WHERE t.to_card = a.account_number),"
+                             + " (SELECT COALESCE(SUM(amount), 0) FROM transactions t WHERE t.from_card = a.account_number)"
+                             + " FROM accounts a");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                long balance = Money.fromDecimal(rs.getBigDecimal(2));
+                total += balance;
+                if (balance < 0) negative++;
+                long expected = OPENING_BALANCE_CENTS + Money.fromDecimal(rs.getBigDecimal(3)) - Money.fromDecimal(rs.getBigDecimal(4));
+                if (balance != expected) {
+                    if (mismatched++ < 10) {
+                        System.out.println("  account " + rs.getString(1) + ": balance " + Money.format(balance)
+                                + ", opening balance plus ledger says " + Money.format(expected));
+                    }
+                }
+            }
+        }
+        boolean ok = total == expectedTotal && negative == 0 && mismatched == 0;
+        System.out.printf(Locale.ROOT, "%nConservation: total %s (expected %s), %d negative balances, %d accounts disagree with the ledger -> %s%n",
+                Money.format(total), Money.format(expectedTotal), negative, mismatched, ok ? "OK" : "VIOLATED");
+        return ok;
+    }
+}
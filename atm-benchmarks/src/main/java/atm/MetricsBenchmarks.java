@@ -0,0 +1,30 @@
+package atm;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Cost of the instrumentation added to every operation and JDBC call; run with the
+// default GC profiler to confirm record() stays at 0 B/op.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmarks {
+    @Benchmark
+    public void record() {
+        Metrics.record(Metrics.Operation.BALANCE, System.nanoTime() - 1_500, false);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordThreads4() {
+        Metrics.record(Metrics.Operation.BALANCE, System.nanoTime() - 1_500, false);
+    }
+
+    @Benchmark
+    public String scrape() {
+        return Metrics.scrape();
+    }
+}
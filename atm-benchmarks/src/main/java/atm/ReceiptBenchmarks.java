@@ -0,0 +1,24 @@
+package atm;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Receipt generation as done for every transfer.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiptBenchmarks {
+    @Benchmark
+    public String generate() {
+        return ReceiptCodes.format(ReceiptCodes.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String generateThreads4() {
+        return ReceiptCodes.format(ReceiptCodes.next());
+    }
+}
@@ -0,0 +1,83 @@
+package atm;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Transfer path between random accounts: in memory only, and recorded in an embedded
+// H2 database through DatabaseConnection. Balances are large enough never to run out.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferBenchmarks {
+    private static final int ACCOUNTS = 10_000;
+    private static final long BALANCE = 1_000_000_000_00L;
+
+    @State(Scope.Benchmark)
+    public static class InMemory {
+        AccountLedger ledger;
+        TransferEngine engine;
+        Account[] accounts;
+
+        @Setup
+        public void setUp() {
+            ledger = new AccountLedger();
+            accounts = new Account[ACCOUNTS];
+            for (int i = 0; i < ACCOUNTS; i++) {
+                accounts[i] = new Account(H2Fixture.accountNumber(i), H2Fixture.cardNo(i), "1234", BALANCE, "Customer " + i, "IFSC0000001", null);
+                ledger.register(accounts[i]);
+            }
+            engine = new TransferEngine(ledger, false);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Database {
+        AccountLedger ledger;
+        TransferEngine engine;
+        Account[] accounts;
+
+        @Setup
+        public void setUp() throws Exception {
+            H2Fixture.start("transfer-bench", ACCOUNTS, BALANCE);
+            ledger = new AccountLedger();
+            accounts = new Account[ACCOUNTS];
+            for (int i = 0; i < ACCOUNTS; i++) {
+                accounts[i] = new Account(H2Fixture.accountNumber(i), H2Fixture.cardNo(i), "1234", BALANCE, "Customer " + i, "IFSC0000001", null);
+                ledger.register(accounts[i]);
+            }
+            engine = new TransferEngine(ledger, true);
+        }
+    }
+
+    @Benchmark
+    public boolean inMemory(InMemory s) throws Exception {
+        return transfer(s.engine, s.accounts);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean inMemoryThreads4(InMemory s) throws Exception {
+        return transfer(s.engine, s.accounts);
+    }
+
+    @Benchmark
+    public boolean database(Database s) throws Exception {
+        return transfer(s.engine, s.accounts);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean databaseThreads4(Database s) throws Exception {
+        return transfer(s.engine, s.accounts);
+    }
+
+    private static boolean transfer(TransferEngine engine, Account[] accounts) throws Exception {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        Account from = accounts[r.nextInt(accounts.length)];
+        Account to = accounts[r.nextInt(accounts.length)];
+        return engine.transfer(from, to, 1 + r.nextInt(10_000), ReceiptCodes.format(ReceiptCodes.next()), "Transfer");
+    }
+}